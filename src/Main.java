@@ -1,40 +1,50 @@
-import java.util.ArrayList;
-import java.util.Random;
 import controller.VoronoiController;
+import sitegen.SiteGenerator;
 import view.VoronoiView;
-import voronoidiagram.Point;
 import voronoidiagram.Voronoi;
 
 
 public class Main {
   public static void main(String[] args) {
     int numArgs = args.length;
-    int argNums[] = new int[3];
+    long argNums[] = new long[4];
     //Defaults
     int width = 1500;
     int height = 1000;
     int numRegions = 1000;
+    long seed = System.nanoTime();
     //Parse inputs
-    for(int i = 0; i < Math.min(3, numArgs); i++) {
+    for(int i = 0; i < Math.min(4, numArgs); i++) {
       if(!args[i].matches("\\d+")){
         invalidCmdArgs();
         return;
       }
-      argNums[i] = Integer.parseInt(args[i]);
+      try {
+        argNums[i] = i < 3 ? Integer.parseInt(args[i]) : Long.parseLong(args[i]);
+      } catch (NumberFormatException e) {
+        invalidCmdArgs();
+        return;
+      }
     }
     switch(numArgs) {
+      case(4):
+        numRegions = (int) argNums[0];
+        width = (int) argNums[1];
+        height = (int) argNums[2];
+        seed = argNums[3];
+        break;
       case(3):
-        numRegions = argNums[0];
-        width = argNums[1];
-        height = argNums[2];
+        numRegions = (int) argNums[0];
+        width = (int) argNums[1];
+        height = (int) argNums[2];
         break;
       case(2):
-        width = argNums[0];
-        height = argNums[1];
+        width = (int) argNums[0];
+        height = (int) argNums[1];
         numRegions = Math.min(width, height);
         break;
       case(1):
-        numRegions = argNums[0];
+        numRegions = (int) argNums[0];
         break;
       case(0):
         break;
@@ -42,16 +52,18 @@ public class Main {
         invalidCmdArgs();
         return;
     }
+    //An empty box has no room for sites
+    if (width == 0 || height == 0) {
+      invalidCmdArgs();
+      return;
+    }
 
     //Generate
-    final Random RAND = new Random();
-    ArrayList<Point> sites = new ArrayList<>(numRegions);
-    for (int i = 0; i < numRegions; i++) {
-      double x = RAND.nextDouble() * width;
-      double y = RAND.nextDouble() * height;
-      sites.add(new Point(x, y));
-    }
-    Voronoi voronoi = new Voronoi(width, height, sites);
+    Voronoi voronoi = new Voronoi(width, height,
+            SiteGenerator.toPoints(SiteGenerator.uniform(numRegions, width, height, seed)));
+    voronoi.setSeed(seed);
+    //Print the seed so the same diagram can be generated again
+    System.out.println("Seed: " + seed);
     Runnable r = new VoronoiController(new VoronoiView(voronoi), voronoi);
     r.run();
   }
@@ -60,6 +72,7 @@ public class Main {
     System.out.println("Usage:\n" +
             "\t NumRegions \n" +
             "\t Width Height \n" +
-            "\t NumRegions Width Height \n");
+            "\t NumRegions Width Height \n" +
+            "\t NumRegions Width Height Seed \n");
   }
 }
@@ -4,11 +4,13 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 
 import voronoidiagram.Voronoi;
 import view.VoronoiView;
 
-public class VoronoiController implements ActionListener, Runnable, MouseListener {
+public class VoronoiController implements ActionListener, Runnable, MouseListener,
+        MouseMotionListener {
   private VoronoiView view;
   private Voronoi voronoi;
 
@@ -61,6 +63,16 @@ public class VoronoiController implements ActionListener, Runnable, MouseListene
 
   @Override
   public void mouseExited(MouseEvent e) {
+    this.view.clearHover();
+  }
+
+  @Override
+  public void mouseMoved(MouseEvent e) {
+    this.view.hover(e.getX(), e.getY());
+  }
+
+  @Override
+  public void mouseDragged(MouseEvent e) {
 
   }
 }
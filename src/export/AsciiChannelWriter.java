@@ -0,0 +1,160 @@
+package export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes ASCII text to a channel through one fixed buffer. Numbers are formatted by hand straight
+ * into the buffer, so writing a value allocates nothing and memory stays the same however much is
+ * written.
+ *
+ * Doubles are written rounded to a fixed number of decimals, with trailing zeros dropped. Values
+ * too large to scale into a long fall back to {@link Double#toString}.
+ */
+public final class AsciiChannelWriter implements Closeable {
+  private static final int BUFFER_BYTES = 1 << 16;
+  //The longest a long can be written, sign included
+  private static final int MAX_LONG_CHARS = 20;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+  private final byte[] digits = new byte[MAX_LONG_CHARS];
+  private final int decimals;
+  private final long scale;
+  //Doubles at least this large are written with Double.toString
+  private final double limit;
+  private long written;
+
+  /**
+   * Creates a writer
+   * @param channel the channel to write to
+   * @param decimals the number of decimals doubles are rounded to, from 0 to 9
+   */
+  public AsciiChannelWriter(WritableByteChannel channel, int decimals) {
+    if (decimals < 0 || decimals > 9) {
+      throw new IllegalArgumentException("Decimals must be between 0 and 9!");
+    }
+    this.channel = channel;
+    this.decimals = decimals;
+    long s = 1;
+    for (int i = 0; i < decimals; i++) {
+      s *= 10;
+    }
+    this.scale = s;
+    this.limit = 1e17 / s;
+  }
+
+  public AsciiChannelWriter write(char c) throws IOException {
+    ensure(1);
+    buffer.put((byte) c);
+    return this;
+  }
+
+  /**
+   * Writes a string, which must be ASCII
+   */
+  public AsciiChannelWriter write(String s) throws IOException {
+    for (int i = 0; i < s.length(); i++) {
+      if (!buffer.hasRemaining()) drain();
+      buffer.put((byte) s.charAt(i));
+    }
+    return this;
+  }
+
+  public AsciiChannelWriter write(long v) throws IOException {
+    if (v == Long.MIN_VALUE) return write(Long.toString(v));
+    ensure(MAX_LONG_CHARS);
+    if (v < 0) {
+      buffer.put((byte) '-');
+      v = -v;
+    }
+    putDigits(v, 1);
+    return this;
+  }
+
+  /**
+   * Writes a double rounded to this writer's decimals
+   * @throws IllegalArgumentException if the value is NaN or infinite
+   */
+  public AsciiChannelWriter write(double v) throws IOException {
+    if (Double.isNaN(v) || Double.isInfinite(v)) {
+      throw new IllegalArgumentException("Cannot write " + v + "!");
+    }
+    if (Math.abs(v) >= limit) return write(Double.toString(v));
+    long scaled = Math.round(v * scale);
+    ensure(2 * MAX_LONG_CHARS + 1);
+    if (scaled < 0) {
+      buffer.put((byte) '-');
+      scaled = -scaled;
+    }
+    putDigits(scaled / scale, 1);
+    long fraction = scaled % scale;
+    if (fraction != 0) {
+      int places = decimals;
+      while (fraction % 10 == 0) {
+        fraction /= 10;
+        places--;
+      }
+      buffer.put((byte) '.');
+      putDigits(fraction, places);
+    }
+    return this;
+  }
+
+  /**
+   * The number of bytes handed to the channel so far
+   */
+  public long bytesWritten() {
+    return written;
+  }
+
+  /**
+   * Writes out everything buffered, leaving the channel open
+   */
+  public void flush() throws IOException {
+    drain();
+  }
+
+  /**
+   * Writes out everything buffered and closes the channel
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      drain();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Puts a non-negative value padded with leading zeros to at least the given width
+   */
+  private void putDigits(long v, int width) {
+    int n = 0;
+    do {
+      digits[n++] = (byte) ('0' + v % 10);
+      v /= 10;
+    } while (v != 0);
+    while (n < width) {
+      digits[n++] = '0';
+    }
+    while (n > 0) {
+      buffer.put(digits[--n]);
+    }
+  }
+
+  private void ensure(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) drain();
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,405 @@
+package export;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import sitegen.SiteGenerator;
+import voronoidiagram.CellMetrics;
+import voronoidiagram.CompactDiagram;
+import voronoidiagram.DiagramSnapshot;
+import voronoidiagram.Edge;
+import voronoidiagram.Point;
+import voronoidiagram.Voronoi;
+
+/**
+ * Exports a finished diagram as SVG, GeoJSON or CSV. Either the edges are written, each with the
+ * indices of the two sites it separates, or the cells, each as the polygon of its site clipped to
+ * the diagram box or clip region. Repeated sites share one cell, which is written once under the
+ * index of the first of them; edges name their sites by that index too.
+ *
+ * Everything is streamed through an {@link AsciiChannelWriter}: edges are written straight from
+ * the snapshot and cells are built one at a time, so exporting takes the same small amount of
+ * memory however large the diagram is.
+ *
+ * The edges of a {@link CompactDiagram} can be written in the same formats, straight from its
+ * float arrays, so a diagram too large to keep as a snapshot never has to become one to be
+ * exported. Coordinates are rounded to the same decimals either way, so the files match those of
+ * the snapshot up to the float rounding and are the same size.
+ */
+public final class DiagramExporter {
+  public enum Format {
+    SVG, GEOJSON, CSV
+  }
+
+  //Enough for sub-pixel placement without bloating the files
+  public static final int DEFAULT_DECIMALS = 3;
+
+  private DiagramExporter() {
+  }
+
+  /**
+   * Writes the edges of a diagram to a file, replacing it if it exists
+   * @param diagram the diagram
+   * @param format the format to write
+   * @param file the file
+   * @param decimals the number of decimals coordinates are rounded to
+   * @return the number of bytes written
+   * @throws IOException if writing fails
+   */
+  public static long writeEdges(DiagramSnapshot diagram, Format format, Path file, int decimals)
+          throws IOException {
+    try (AsciiChannelWriter out = new AsciiChannelWriter(open(file), decimals)) {
+      writeEdges(diagram, format, out);
+      out.flush();
+      return out.bytesWritten();
+    }
+  }
+
+  /**
+   * Writes the edges of a compact diagram to a file, replacing it if it exists
+   * @param diagram the diagram
+   * @param format the format to write
+   * @param file the file
+   * @param decimals the number of decimals coordinates are rounded to
+   * @return the number of bytes written
+   * @throws IOException if writing fails
+   */
+  public static long writeEdges(CompactDiagram diagram, Format format, Path file, int decimals)
+          throws IOException {
+    try (AsciiChannelWriter out = new AsciiChannelWriter(open(file), decimals)) {
+      writeEdges(diagram, format, out);
+      out.flush();
+      return out.bytesWritten();
+    }
+  }
+
+  /**
+   * Writes the cells of a diagram to a file, replacing it if it exists
+   * @param diagram the diagram
+   * @param format the format to write
+   * @param file the file
+   * @param decimals the number of decimals coordinates are rounded to
+   * @return the number of bytes written
+   * @throws IOException if writing fails
+   */
+  public static long writeCells(DiagramSnapshot diagram, Format format, Path file, int decimals)
+          throws IOException {
+    try (AsciiChannelWriter out = new AsciiChannelWriter(open(file), decimals)) {
+      writeCells(diagram, format, out);
+      out.flush();
+      return out.bytesWritten();
+    }
+  }
+
+  /**
+   * Writes the edges of a diagram to a channel, which is left open
+   * @param diagram the diagram
+   * @param format the format to write
+   * @param channel the channel
+   * @param decimals the number of decimals coordinates are rounded to
+   * @throws IOException if writing fails
+   */
+  public static void writeEdges(DiagramSnapshot diagram, Format format,
+                                WritableByteChannel channel, int decimals) throws IOException {
+    AsciiChannelWriter out = new AsciiChannelWriter(channel, decimals);
+    writeEdges(diagram, format, out);
+    out.flush();
+  }
+
+  /**
+   * Writes the edges of a compact diagram to a channel, which is left open
+   * @param diagram the diagram
+   * @param format the format to write
+   * @param channel the channel
+   * @param decimals the number of decimals coordinates are rounded to
+   * @throws IOException if writing fails
+   */
+  public static void writeEdges(CompactDiagram diagram, Format format,
+                                WritableByteChannel channel, int decimals) throws IOException {
+    AsciiChannelWriter out = new AsciiChannelWriter(channel, decimals);
+    writeEdges(diagram, format, out);
+    out.flush();
+  }
+
+  /**
+   * Writes the cells of a diagram to a channel, which is left open
+   * @param diagram the diagram
+   * @param format the format to write
+   * @param channel the channel
+   * @param decimals the number of decimals coordinates are rounded to
+   * @throws IOException if writing fails
+   */
+  public static void writeCells(DiagramSnapshot diagram, Format format,
+                                WritableByteChannel channel, int decimals) throws IOException {
+    AsciiChannelWriter out = new AsciiChannelWriter(channel, decimals);
+    writeCells(diagram, format, out);
+    out.flush();
+  }
+
+  private static void writeEdges(DiagramSnapshot diagram, Format format, AsciiChannelWriter out)
+          throws IOException {
+    switch (format) {
+      case SVG:
+        svgEdges(diagram, out);
+        break;
+      case GEOJSON:
+        geoJsonEdges(diagram, out);
+        break;
+      case CSV:
+        csvEdges(diagram, out);
+        break;
+    }
+  }
+
+  private static void writeEdges(CompactDiagram diagram, Format format, AsciiChannelWriter out)
+          throws IOException {
+    switch (format) {
+      case SVG:
+        svgEdges(diagram, out);
+        break;
+      case GEOJSON:
+        geoJsonEdges(diagram, out);
+        break;
+      case CSV:
+        csvEdges(diagram, out);
+        break;
+    }
+  }
+
+  private static void writeCells(DiagramSnapshot diagram, Format format, AsciiChannelWriter out)
+          throws IOException {
+    switch (format) {
+      case SVG:
+        svgCells(diagram, out);
+        break;
+      case GEOJSON:
+        geoJsonCells(diagram, out);
+        break;
+      case CSV:
+        csvCells(diagram, out);
+        break;
+    }
+  }
+
+  //******************************SVG***************************************//
+
+  /**
+   * Writes all edges as one path, followed by a dot for every site
+   */
+  private static void svgEdges(DiagramSnapshot diagram, AsciiChannelWriter out)
+          throws IOException {
+    svgHeader(diagram.width, diagram.height, out);
+    out.write("<path fill=\"none\" stroke=\"black\" d=\"\n");
+    for (Edge e : diagram.edges) {
+      out.write('M').write(e.start.x).write(' ').write(e.start.y)
+              .write('L').write(e.end.x).write(' ').write(e.end.y).write('\n');
+    }
+    out.write("\"/>\n<g fill=\"black\">\n");
+    for (int i = 0; i < diagram.sites.size(); i++) {
+      if (diagram.canonical(i) != i) continue;
+      Point p = diagram.sites.get(i);
+      out.write("<circle cx=\"").write(p.x).write("\" cy=\"").write(p.y).write("\" r=\"1\"/>\n");
+    }
+    out.write("</g>\n</svg>\n");
+  }
+
+  private static void svgEdges(CompactDiagram diagram, AsciiChannelWriter out)
+          throws IOException {
+    svgHeader(diagram.width, diagram.height, out);
+    out.write("<path fill=\"none\" stroke=\"black\" d=\"\n");
+    float[] edges = diagram.edges;
+    for (int i = 0; i < edges.length; i += 4) {
+      out.write('M').write(edges[i]).write(' ').write(edges[i + 1])
+              .write('L').write(edges[i + 2]).write(' ').write(edges[i + 3]).write('\n');
+    }
+    out.write("\"/>\n<g fill=\"black\">\n");
+    for (int i = 0; i < diagram.siteCount(); i++) {
+      if (diagram.isRepeated(i)) continue;
+      out.write("<circle cx=\"").write(diagram.sites[2 * i]).write("\" cy=\"")
+              .write(diagram.sites[2 * i + 1]).write("\" r=\"1\"/>\n");
+    }
+    out.write("</g>\n</svg>\n");
+  }
+
+  private static void svgCells(DiagramSnapshot diagram, AsciiChannelWriter out)
+          throws IOException {
+    svgHeader(diagram.width, diagram.height, out);
+    out.write("<g fill=\"none\" stroke=\"black\">\n");
+    for (int i = 0; i < diagram.sites.size(); i++) {
+      if (diagram.canonical(i) != i) continue;
+      double[] cell = CellMetrics.cell(diagram, i);
+      if (cell.length == 0) continue;
+      out.write("<polygon data-site=\"").write(i).write("\" points=\"");
+      for (int k = 0; k < cell.length; k += 2) {
+        if (k > 0) out.write(' ');
+        out.write(cell[k]).write(',').write(cell[k + 1]);
+      }
+      out.write("\"/>\n");
+    }
+    out.write("</g>\n</svg>\n");
+  }
+
+  private static void svgHeader(int width, int height, AsciiChannelWriter out)
+          throws IOException {
+    out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").write(width)
+            .write("\" height=\"").write(height)
+            .write("\" viewBox=\"0 0 ").write(width).write(' ').write(height)
+            .write("\">\n");
+  }
+
+  //******************************GEOJSON***************************************//
+
+  /**
+   * Writes every edge as a LineString feature with the indices of its two sites
+   */
+  private static void geoJsonEdges(DiagramSnapshot diagram, AsciiChannelWriter out)
+          throws IOException {
+    out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+    boolean first = true;
+    for (Edge e : diagram.edges) {
+      out.write(first ? "\n" : ",\n");
+      first = false;
+      out.write("{\"type\":\"Feature\",\"properties\":{\"left\":")
+              .write(diagram.indexOf(e.leftSite)).write(",\"right\":")
+              .write(diagram.indexOf(e.rightSite))
+              .write("},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[")
+              .write(e.start.x).write(',').write(e.start.y).write("],[")
+              .write(e.end.x).write(',').write(e.end.y).write("]]}}");
+    }
+    out.write("\n]}\n");
+  }
+
+  private static void geoJsonEdges(CompactDiagram diagram, AsciiChannelWriter out)
+          throws IOException {
+    out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+    float[] edges = diagram.edges;
+    for (int i = 0; i < diagram.edgeCount(); i++) {
+      out.write(i == 0 ? "\n" : ",\n");
+      out.write("{\"type\":\"Feature\",\"properties\":{\"left\":")
+              .write(diagram.edgeSites[2 * i]).write(",\"right\":")
+              .write(diagram.edgeSites[2 * i + 1])
+              .write("},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[")
+              .write(edges[4 * i]).write(',').write(edges[4 * i + 1]).write("],[")
+              .write(edges[4 * i + 2]).write(',').write(edges[4 * i + 3]).write("]]}}");
+    }
+    out.write("\n]}\n");
+  }
+
+  /**
+   * Writes every non-empty cell as a Polygon feature with the index of its site. The ring is
+   * closed by repeating its first vertex, as GeoJSON requires.
+   */
+  private static void geoJsonCells(DiagramSnapshot diagram, AsciiChannelWriter out)
+          throws IOException {
+    out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+    boolean first = true;
+    for (int i = 0; i < diagram.sites.size(); i++) {
+      if (diagram.canonical(i) != i) continue;
+      double[] cell = CellMetrics.cell(diagram, i);
+      if (cell.length == 0) continue;
+      out.write(first ? "\n" : ",\n");
+      first = false;
+      out.write("{\"type\":\"Feature\",\"properties\":{\"site\":").write(i)
+              .write("},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[");
+      for (int k = 0; k <= cell.length; k += 2) {
+        if (k > 0) out.write(',');
+        int v = k % cell.length;
+        out.write('[').write(cell[v]).write(',').write(cell[v + 1]).write(']');
+      }
+      out.write("]]}}");
+    }
+    out.write("\n]}\n");
+  }
+
+  //******************************CSV***************************************//
+
+  /**
+   * Writes one row per edge: x1,y1,x2,y2,left,right
+   */
+  private static void csvEdges(DiagramSnapshot diagram, AsciiChannelWriter out)
+          throws IOException {
+    out.write("x1,y1,x2,y2,left,right\n");
+    for (Edge e : diagram.edges) {
+      out.write(e.start.x).write(',').write(e.start.y).write(',')
+              .write(e.end.x).write(',').write(e.end.y).write(',')
+              .write(diagram.indexOf(e.leftSite)).write(',')
+              .write(diagram.indexOf(e.rightSite)).write('\n');
+    }
+  }
+
+  private static void csvEdges(CompactDiagram diagram, AsciiChannelWriter out)
+          throws IOException {
+    out.write("x1,y1,x2,y2,left,right\n");
+    float[] edges = diagram.edges;
+    for (int i = 0; i < diagram.edgeCount(); i++) {
+      out.write(edges[4 * i]).write(',').write(edges[4 * i + 1]).write(',')
+              .write(edges[4 * i + 2]).write(',').write(edges[4 * i + 3]).write(',')
+              .write(diagram.edgeSites[2 * i]).write(',')
+              .write(diagram.edgeSites[2 * i + 1]).write('\n');
+    }
+  }
+
+  /**
+   * Writes one row per cell vertex: site,vertex,x,y
+   */
+  private static void csvCells(DiagramSnapshot diagram, AsciiChannelWriter out)
+          throws IOException {
+    out.write("site,vertex,x,y\n");
+    for (int i = 0; i < diagram.sites.size(); i++) {
+      if (diagram.canonical(i) != i) continue;
+      double[] cell = CellMetrics.cell(diagram, i);
+      for (int k = 0; k < cell.length; k += 2) {
+        out.write(i).write(',').write(k / 2).write(',')
+                .write(cell[k]).write(',').write(cell[k + 1]).write('\n');
+      }
+    }
+  }
+
+  private static FileChannel open(Path file) throws IOException {
+    return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  //******************************COMMAND LINE***************************************//
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 6) {
+      System.out.println("Usage:\n" +
+              "\t svg|geojson|csv edges|cells|compact Output NumRegions Width Height [Seed] \n");
+      return;
+    }
+    Format format = Format.valueOf(args[0].toUpperCase());
+    String what = args[1].toLowerCase();
+    int count = Integer.parseInt(args[3]);
+    int width = Integer.parseInt(args[4]);
+    int height = Integer.parseInt(args[5]);
+    long seed = args.length > 6 ? Long.parseLong(args[6]) : System.nanoTime();
+
+    double[] coords = SiteGenerator.uniform(count, width, height, seed);
+    long start;
+    long bytes;
+    if (what.equals("compact")) {
+      //Edges of a single-precision build, which never becomes a snapshot
+      float[] floats = new float[coords.length];
+      for (int i = 0; i < coords.length; i++) {
+        floats[i] = (float) coords[i];
+      }
+      CompactDiagram diagram = CompactDiagram.build(width, height, floats);
+      start = System.nanoTime();
+      bytes = writeEdges(diagram, format, Paths.get(args[2]), DEFAULT_DECIMALS);
+    } else {
+      DiagramSnapshot diagram = new Voronoi(width, height, SiteGenerator.toPoints(coords))
+              .snapshot();
+      start = System.nanoTime();
+      bytes = what.equals("cells")
+              ? writeCells(diagram, format, Paths.get(args[2]), DEFAULT_DECIMALS)
+              : writeEdges(diagram, format, Paths.get(args[2]), DEFAULT_DECIMALS);
+    }
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    System.out.println("Wrote " + bytes + " bytes to " + args[2] + " in " + millis + " ms");
+  }
+}
@@ -0,0 +1,307 @@
+package service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import voronoidiagram.DiagramCache;
+import voronoidiagram.DiagramSnapshot;
+import voronoidiagram.Point;
+import voronoidiagram.Util;
+
+/**
+ * Represents a small local HTTP service that builds diagrams on request.
+ *
+ * POST a site set to /diagram in the binary or JSON format of {@link SiteCodec}, choosing the
+ * format with the Content-Type header. The edges are streamed back in the same format, or in the
+ * one named by the Accept header. Each request runs on its own thread (a virtual thread when the
+ * runtime has them). At most maxConcurrent diagrams are built at once and at most maxQueued more
+ * requests wait for a turn; anything beyond that is turned away with 503 straight away. Site
+ * sets that were built recently are answered from a {@link DiagramCache} without waiting.
+ *
+ * Request bodies larger than maxBodyBytes are refused with 413, and no more than that is ever
+ * read or allocated for one request, whatever its header claims. Malformed bodies get 400.
+ */
+public class DiagramServer {
+  //The largest request body taken by default, about four million binary sites
+  public static final int DEFAULT_MAX_BODY_BYTES = 64 << 20;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  //Limits the number of diagrams being built at once
+  private final Semaphore builders;
+  //The number of requests currently building or waiting to build
+  private final AtomicInteger admitted = new AtomicInteger();
+  private final int maxAdmitted;
+  //Recently built diagrams
+  private final DiagramCache cache;
+  //The largest request body taken
+  private final int maxBodyBytes;
+
+  /**
+   * Creates a new server with a cache of 256 diagrams or 64 MB. It does not accept requests until
+   * started.
+   * @param address the address to listen on
+   * @param maxConcurrent the most diagrams built at once
+   * @param maxQueued the most requests waiting to be built
+   * @throws IOException if the address cannot be bound
+   */
+  public DiagramServer(InetSocketAddress address, int maxConcurrent, int maxQueued)
+          throws IOException {
+    this(address, maxConcurrent, maxQueued, new DiagramCache(256, 64L << 20));
+  }
+
+  /**
+   * Creates a new server taking bodies of up to DEFAULT_MAX_BODY_BYTES. It does not accept
+   * requests until started.
+   * @param address the address to listen on
+   * @param maxConcurrent the most diagrams built at once
+   * @param maxQueued the most requests waiting to be built
+   * @param cache the cache of built diagrams
+   * @throws IOException if the address cannot be bound
+   */
+  public DiagramServer(InetSocketAddress address, int maxConcurrent, int maxQueued,
+                       DiagramCache cache) throws IOException {
+    this(address, maxConcurrent, maxQueued, cache, DEFAULT_MAX_BODY_BYTES);
+  }
+
+  /**
+   * Creates a new server. It does not accept requests until started.
+   * @param address the address to listen on
+   * @param maxConcurrent the most diagrams built at once
+   * @param maxQueued the most requests waiting to be built
+   * @param cache the cache of built diagrams
+   * @param maxBodyBytes the largest request body taken
+   * @throws IOException if the address cannot be bound
+   */
+  public DiagramServer(InetSocketAddress address, int maxConcurrent, int maxQueued,
+                       DiagramCache cache, int maxBodyBytes) throws IOException {
+    if (maxConcurrent < 1 || maxQueued < 0) {
+      throw new IllegalArgumentException("Need at least one builder and a non-negative queue!");
+    }
+    if (maxBodyBytes < SiteCodec.HEADER_BYTES) {
+      throw new IllegalArgumentException("The body limit must at least fit a header!");
+    }
+    this.builders = new Semaphore(maxConcurrent);
+    this.maxAdmitted = maxConcurrent + maxQueued;
+    this.cache = cache;
+    this.maxBodyBytes = maxBodyBytes;
+    this.executor = newRequestExecutor();
+    this.server = HttpServer.create(address, 0);
+    this.server.setExecutor(executor);
+    this.server.createContext("/diagram", this::handle);
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stops accepting requests, waiting up to the given time for requests in progress
+   * @param delaySeconds the longest time to wait
+   */
+  public void stop(int delaySeconds) {
+    server.stop(delaySeconds);
+    executor.shutdown();
+  }
+
+  /**
+   * The address the server is listening on, useful when started on port 0
+   * @return the address
+   */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  public DiagramCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Creates a thread-per-request executor, using virtual threads when the runtime supports them
+   * and falling back to a cached pool of daemon platform threads otherwise. Either way the
+   * threads never keep the JVM alive on their own.
+   * @return the executor
+   */
+  static ExecutorService newRequestExecutor() {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "diagram-request-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  //******************************HANDLING REQUESTS***************************************//
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        sendError(exchange, 405, "Only POST is supported");
+        return;
+      }
+      //Admission control: turn the request away rather than let the queue grow without bound
+      if (admitted.incrementAndGet() > maxAdmitted) {
+        admitted.decrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendError(exchange, 503, "Too many requests");
+        return;
+      }
+      try {
+        serve(exchange);
+      } finally {
+        admitted.decrementAndGet();
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    boolean binaryIn = isBinary(exchange.getRequestHeaders().getFirst("Content-Type"));
+    String accept = exchange.getRequestHeaders().getFirst("Accept");
+    boolean binaryOut = accept == null || accept.contains("*/*")
+            ? binaryIn : isBinary(accept);
+
+    //Refuse a body declared too large before reading any of it. Otherwise read no more than it
+    //declares, or than the limit when it declares nothing, which also caps the site count.
+    long declared = contentLength(exchange);
+    if (declared > maxBodyBytes) {
+      sendError(exchange, 413, "Site set is larger than " + maxBodyBytes + " bytes");
+      return;
+    }
+    int limit = declared >= 0 ? (int) declared : maxBodyBytes;
+
+    SiteCodec.SiteSet set;
+    try (InputStream in = exchange.getRequestBody()) {
+      set = binaryIn ? SiteCodec.readBinary(in, limit) : SiteCodec.readJson(in, limit);
+      validate(set);
+    } catch (SiteCodec.TooLargeException e) {
+      sendError(exchange, 413, e.getMessage());
+      return;
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400, e.getMessage());
+      return;
+    } catch (IOException e) {
+      sendError(exchange, 400, "Could not read the site set");
+      return;
+    }
+
+    //The key drops duplicate sites, which add nothing to the diagram
+    DiagramCache.Key key = DiagramCache.key(set.width, set.height, set.sites);
+    DiagramSnapshot diagram = cache.get(key);
+    if (diagram == null) {
+      try {
+        builders.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        sendError(exchange, 503, "Interrupted while waiting");
+        return;
+      }
+      try {
+        //Another request may have built the same sites while this one waited
+        diagram = cache.peek(key);
+        if (diagram == null) diagram = cache.build(key);
+      } finally {
+        builders.release();
+      }
+    }
+
+    //Stream the edges back with chunked encoding, so no full copy of the response is kept
+    exchange.getResponseHeaders().set("Content-Type",
+            binaryOut ? SiteCodec.BINARY_TYPE : SiteCodec.JSON_TYPE);
+    exchange.sendResponseHeaders(200, 0);
+    OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 1 << 16);
+    if (binaryOut) {
+      SiteCodec.writeEdgesBinary(out, diagram.edges);
+    } else {
+      SiteCodec.writeEdgesJson(new BufferedWriter(
+              new OutputStreamWriter(out, StandardCharsets.UTF_8)), diagram.version,
+              diagram.edges);
+    }
+    out.close();
+  }
+
+  /**
+   * Checks that a site set describes a diagram the generator can build
+   * @param set the site set
+   * @throws IllegalArgumentException if the dimensions or any site are out of range
+   */
+  private static void validate(SiteCodec.SiteSet set) {
+    if (set.width <= 0 || set.height <= 0) {
+      throw new IllegalArgumentException("Width and height must be positive!");
+    }
+    for (Point p : set.sites) {
+      if (!Util.inRangeEx(0, p.x, set.width) || !Util.inRangeEx(0, p.y, set.height)) {
+        throw new IllegalArgumentException("Site out of bounds: " + p.x + ", " + p.y);
+      }
+    }
+  }
+
+  /**
+   * Reads the declared length of a request body
+   * @return the length, or -1 if it is not given or not a number
+   */
+  private static long contentLength(HttpExchange exchange) {
+    String length = exchange.getRequestHeaders().getFirst("Content-Length");
+    if (length == null) return -1;
+    try {
+      return Long.parseLong(length.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static boolean isBinary(String type) {
+    return type != null && type.startsWith(SiteCodec.BINARY_TYPE);
+  }
+
+  private static void sendError(HttpExchange exchange, int code, String message)
+          throws IOException {
+    byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(code, body.length);
+    exchange.getResponseBody().write(body);
+  }
+
+  //******************************COMMAND LINE***************************************//
+
+  public static void main(String[] args) throws IOException {
+    int port = 8080;
+    int maxConcurrent = Runtime.getRuntime().availableProcessors();
+    int maxQueued = 64;
+    int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+    try {
+      if (args.length > 0) port = Integer.parseInt(args[0]);
+      if (args.length > 1) maxConcurrent = Integer.parseInt(args[1]);
+      if (args.length > 2) maxQueued = Integer.parseInt(args[2]);
+      if (args.length > 3) maxBodyBytes = Integer.parseInt(args[3]);
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+              "\t [Port [MaxConcurrent [MaxQueued [MaxBodyBytes]]]] \n");
+      return;
+    }
+    DiagramServer server = new DiagramServer(new InetSocketAddress(port), maxConcurrent,
+            maxQueued, new DiagramCache(256, 64L << 20), maxBodyBytes);
+    server.start();
+    System.out.println("Serving diagrams on " + server.getAddress() + "/diagram");
+  }
+}
@@ -0,0 +1,174 @@
+package service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sitegen.SiteGenerator;
+import voronoidiagram.Point;
+
+/**
+ * Represents a simple closed-loop load generator for {@link DiagramServer}. A fixed number of
+ * clients each send requests back to back until the total is reached, then the latency
+ * percentiles and throughput are printed. Site sets are generated from a fixed seed, so runs can
+ * be compared.
+ */
+public class LoadGenerator {
+  private final URI target;
+  private final HttpClient client;
+
+  public LoadGenerator(URI target) {
+    this.target = target;
+    this.client = HttpClient.newBuilder().executor(DiagramServer.newRequestExecutor()).build();
+  }
+
+  /**
+   * Represents the outcome of one run
+   */
+  public static final class Result {
+    public final int succeeded;
+    public final int rejected;
+    public final int failed;
+    public final long p50Nanos;
+    public final long p99Nanos;
+    public final long maxNanos;
+    public final double requestsPerSecond;
+
+    Result(long[] latencies, int count, int rejected, int failed, long wallNanos) {
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      this.succeeded = count;
+      this.rejected = rejected;
+      this.failed = failed;
+      this.p50Nanos = percentile(sorted, 0.50);
+      this.p99Nanos = percentile(sorted, 0.99);
+      this.maxNanos = count == 0 ? 0 : sorted[count - 1];
+      this.requestsPerSecond = count * 1e9 / Math.max(1, wallNanos);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+      if (sorted.length == 0) return 0;
+      int i = (int) Math.ceil(p * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    @Override
+    public String toString() {
+      return String.format("ok=%d rejected=%d failed=%d p50=%.2fms p99=%.2fms max=%.2fms "
+                      + "throughput=%.1f req/s", succeeded, rejected, failed, p50Nanos / 1e6,
+              p99Nanos / 1e6, maxNanos / 1e6, requestsPerSecond);
+    }
+  }
+
+  /**
+   * Sends the given number of requests from the given number of concurrent clients
+   * @param requests the total number of requests
+   * @param clients the number of requests in flight at once
+   * @param bodies the request bodies, in the binary format, used round robin
+   * @return the latencies and throughput of the successful requests
+   * @throws InterruptedException if interrupted while waiting for the clients
+   */
+  public Result run(int requests, int clients, List<byte[]> bodies) throws InterruptedException {
+    long[] latencies = new long[requests];
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger done = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+
+    ExecutorService pool = DiagramServer.newRequestExecutor();
+    List<Future<?>> futures = new ArrayList<>(clients);
+    long start = System.nanoTime();
+    for (int c = 0; c < clients; c++) {
+      futures.add(pool.submit(() -> {
+        int i;
+        while ((i = next.getAndIncrement()) < requests) {
+          HttpRequest request = HttpRequest.newBuilder(target)
+                  .header("Content-Type", SiteCodec.BINARY_TYPE)
+                  .POST(HttpRequest.BodyPublishers.ofByteArray(bodies.get(i % bodies.size())))
+                  .build();
+          long sent = System.nanoTime();
+          try {
+            HttpResponse<byte[]> response =
+                    client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long elapsed = System.nanoTime() - sent;
+            if (response.statusCode() == 200) {
+              latencies[done.getAndIncrement()] = elapsed;
+            } else if (response.statusCode() == 503) {
+              rejected.incrementAndGet();
+            } else {
+              failed.incrementAndGet();
+            }
+          } catch (IOException e) {
+            failed.incrementAndGet();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }));
+    }
+    for (Future<?> f : futures) {
+      try {
+        f.get();
+      } catch (ExecutionException e) {
+        failed.incrementAndGet();
+      }
+    }
+    long wall = System.nanoTime() - start;
+    pool.shutdown();
+    return new Result(latencies, done.get(), rejected.get(), failed.get(), wall);
+  }
+
+  /**
+   * Creates request bodies of uniformly random sites from a fixed seed
+   * @param count the number of bodies
+   * @param sites the number of sites in each
+   * @param width the width of each diagram
+   * @param height the height of each diagram
+   * @param seed the seed
+   * @return the bodies in the binary format
+   */
+  public static List<byte[]> randomBodies(int count, int sites, int width, int height, long seed) {
+    List<byte[]> bodies = new ArrayList<>(count);
+    for (int b = 0; b < count; b++) {
+      List<Point> points = SiteGenerator.toPoints(
+              SiteGenerator.uniform(sites, width, height, seed + b));
+      ByteArrayOutputStream out = new ByteArrayOutputStream(12 + 16 * sites);
+      try {
+        SiteCodec.writeBinary(out, width, height, points);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      bodies.add(out.toByteArray());
+    }
+    return bodies;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    if (args.length < 1) {
+      System.out.println("Usage:\n" +
+              "\t Url [Requests [Clients [Sites]]] \n");
+      return;
+    }
+    URI target = URI.create(args[0]);
+    int requests = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int clients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+    int sites = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+    LoadGenerator generator = new LoadGenerator(target);
+    List<byte[]> bodies = randomBodies(32, sites, 1500, 1000, 42);
+    //Warm up the server before measuring
+    generator.run(Math.min(requests, 200), clients, bodies);
+    System.out.println(generator.run(requests, clients, bodies));
+  }
+}
@@ -0,0 +1,302 @@
+package service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import voronoidiagram.Edge;
+import voronoidiagram.Point;
+
+/**
+ * Reads site sets and writes edges in the two formats the diagram service speaks.
+ *
+ * Binary (big-endian): int width, int height, int count, then count pairs of doubles (x, y). Edges
+ * are written back as int count followed by count groups of four doubles (x1, y1, x2, y2).
+ *
+ * JSON: {"width": w, "height": h, "sites": [[x, y], ...]}. Edges are written back as
+ * {"version": v, "edges": [[x1, y1, x2, y2], ...]}.
+ */
+public final class SiteCodec {
+  public static final String BINARY_TYPE = "application/octet-stream";
+  public static final String JSON_TYPE = "application/json";
+  //The size of the binary header and of each site in it
+  public static final int HEADER_BYTES = 12;
+  public static final int SITE_BYTES = 16;
+
+  private SiteCodec() {
+  }
+
+  /**
+   * Thrown when a request is larger than the reader was allowed to take
+   */
+  public static final class TooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public TooLargeException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Represents a parsed request: the diagram dimensions and its sites
+   */
+  public static final class SiteSet {
+    public final int width;
+    public final int height;
+    public final ArrayList<Point> sites;
+
+    public SiteSet(int width, int height, ArrayList<Point> sites) {
+      this.width = width;
+      this.height = height;
+      this.sites = sites;
+    }
+  }
+
+  //******************************BINARY***************************************//
+
+  /**
+   * Reads a site set in the binary format. The count in the header is checked against the limit
+   * before anything is allocated for it, and the list of sites only grows as they arrive.
+   * @param in the stream to read
+   * @param maxBytes the most bytes the site set may take
+   * @return the site set
+   * @throws TooLargeException if the header counts more sites than fit in maxBytes
+   * @throws IOException if the stream ends early
+   * @throws IllegalArgumentException if the header is invalid
+   */
+  public static SiteSet readBinary(InputStream in, int maxBytes) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    int width = data.readInt();
+    int height = data.readInt();
+    int count = data.readInt();
+    if (count < 0) {
+      throw new IllegalArgumentException("Negative site count!");
+    }
+    if (count > (maxBytes - HEADER_BYTES) / SITE_BYTES) {
+      throw new TooLargeException(count + " sites do not fit in " + maxBytes + " bytes");
+    }
+    ArrayList<Point> sites = new ArrayList<>(Math.min(count, 4096));
+    for (int i = 0; i < count; i++) {
+      sites.add(new Point(data.readDouble(), data.readDouble()));
+    }
+    return new SiteSet(width, height, sites);
+  }
+
+  /**
+   * Writes a site set in the binary format
+   * @param out the stream to write to
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param sites the sites
+   * @throws IOException if writing fails
+   */
+  public static void writeBinary(OutputStream out, int width, int height, List<Point> sites)
+          throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(width);
+    data.writeInt(height);
+    data.writeInt(sites.size());
+    for (Point p : sites) {
+      data.writeDouble(p.x);
+      data.writeDouble(p.y);
+    }
+    data.flush();
+  }
+
+  /**
+   * Writes edges in the binary format
+   * @param out the stream to write to
+   * @param edges the edges
+   * @throws IOException if writing fails
+   */
+  public static void writeEdgesBinary(OutputStream out, List<Edge> edges) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(edges.size());
+    for (Edge e : edges) {
+      data.writeDouble(e.start.x);
+      data.writeDouble(e.start.y);
+      data.writeDouble(e.end.x);
+      data.writeDouble(e.end.y);
+    }
+    data.flush();
+  }
+
+  //******************************JSON***************************************//
+
+  /**
+   * Reads a site set in the JSON format. Only the fields above are understood; any others are
+   * rejected.
+   * @param in the stream to read
+   * @param maxBytes the most bytes the site set may take
+   * @return the site set
+   * @throws TooLargeException if the stream holds more than maxBytes
+   * @throws IOException if reading fails
+   * @throws IllegalArgumentException if the JSON is malformed, is followed by anything but
+   *         whitespace, or gives a width or height that is not an int
+   */
+  public static SiteSet readJson(InputStream in, int maxBytes) throws IOException {
+    byte[] bytes = in.readNBytes(maxBytes);
+    if (bytes.length == maxBytes && in.read() >= 0) {
+      throw new TooLargeException("Site set is larger than " + maxBytes + " bytes");
+    }
+    return new JsonReader(new String(bytes, StandardCharsets.UTF_8)).readSiteSet();
+  }
+
+  /**
+   * Writes a site set in the JSON format
+   * @param out the writer to write to
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param sites the sites
+   * @throws IOException if writing fails
+   */
+  public static void writeJson(Writer out, int width, int height, List<Point> sites)
+          throws IOException {
+    out.write("{\"width\":" + width + ",\"height\":" + height + ",\"sites\":[");
+    for (int i = 0; i < sites.size(); i++) {
+      Point p = sites.get(i);
+      if (i > 0) out.write(',');
+      out.write("[" + p.x + "," + p.y + "]");
+    }
+    out.write("]}");
+    out.flush();
+  }
+
+  /**
+   * Writes edges in the JSON format, one edge at a time
+   * @param out the writer to write to
+   * @param version the version of the diagram the edges belong to
+   * @param edges the edges
+   * @throws IOException if writing fails
+   */
+  public static void writeEdgesJson(Writer out, long version, List<Edge> edges)
+          throws IOException {
+    out.write("{\"version\":" + version + ",\"edges\":[");
+    for (int i = 0; i < edges.size(); i++) {
+      Edge e = edges.get(i);
+      if (i > 0) out.write(',');
+      out.write("[" + e.start.x + "," + e.start.y + "," + e.end.x + "," + e.end.y + "]");
+    }
+    out.write("]}");
+    out.flush();
+  }
+
+  /**
+   * A minimal reader for the site set JSON format
+   */
+  private static final class JsonReader {
+    private final String text;
+    private int pos;
+
+    JsonReader(String text) {
+      this.text = text;
+    }
+
+    SiteSet readSiteSet() {
+      Integer width = null;
+      Integer height = null;
+      ArrayList<Point> sites = null;
+      expect('{');
+      do {
+        String key = readString();
+        expect(':');
+        switch (key) {
+          case "width":
+            width = readInt();
+            break;
+          case "height":
+            height = readInt();
+            break;
+          case "sites":
+            sites = readSites();
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown field " + key + "!");
+        }
+      } while (tryRead(','));
+      expect('}');
+      skipSpace();
+      if (pos < text.length()) {
+        throw new IllegalArgumentException("Unexpected content at " + pos + "!");
+      }
+      if (width == null || height == null || sites == null) {
+        throw new IllegalArgumentException("Width, height and sites are required!");
+      }
+      return new SiteSet(width, height, sites);
+    }
+
+    private ArrayList<Point> readSites() {
+      ArrayList<Point> sites = new ArrayList<>();
+      expect('[');
+      if (tryRead(']')) return sites;
+      do {
+        expect('[');
+        double x = readNumber();
+        expect(',');
+        double y = readNumber();
+        expect(']');
+        sites.add(new Point(x, y));
+      } while (tryRead(','));
+      expect(']');
+      return sites;
+    }
+
+    private String readString() {
+      expect('"');
+      int end = text.indexOf('"', pos);
+      if (end < 0) throw new IllegalArgumentException("Unterminated string!");
+      String s = text.substring(pos, end);
+      pos = end + 1;
+      return s;
+    }
+
+    private double readNumber() {
+      skipSpace();
+      int start = pos;
+      while (pos < text.length() && "+-.eE0123456789".indexOf(text.charAt(pos)) >= 0) {
+        pos++;
+      }
+      try {
+        return Double.parseDouble(text.substring(start, pos));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Expected a number at " + start + "!");
+      }
+    }
+
+    private int readInt() {
+      int start = pos;
+      double value = readNumber();
+      if (value != Math.rint(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Expected an integer at " + start + "!");
+      }
+      return (int) value;
+    }
+
+    private boolean tryRead(char c) {
+      skipSpace();
+      if (pos < text.length() && text.charAt(pos) == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c) {
+      if (!tryRead(c)) {
+        throw new IllegalArgumentException("Expected " + c + " at " + pos + "!");
+      }
+    }
+
+    private void skipSpace() {
+      while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+        pos++;
+      }
+    }
+  }
+}
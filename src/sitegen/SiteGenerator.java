@@ -0,0 +1,417 @@
+package sitegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import voronoidiagram.Point;
+
+/**
+ * Generates site sets for benchmarks and reproducible runs. Every generator takes a seed and
+ * writes the sites straight into a packed array x0, y0, x1, y1, ... so that tens of millions of
+ * sites need no per-site objects. Sites always lie strictly inside the 0..width x 0..height box,
+ * as the diagram requires.
+ *
+ * Large uniform and clustered sets are generated in parallel. The work is cut into fixed-size
+ * chunks, each with its own random stream derived from the seed, so the output depends only on
+ * the seed and never on the number of threads.
+ *
+ * The degenerate sets are built from integers scaled by a power of two, so every coordinate is
+ * exact and the sites really are collinear or cocircular, not just within rounding of it.
+ */
+public final class SiteGenerator {
+  //The number of sites generated from one random stream
+  private static final int CHUNK = 1 << 16;
+  //Integers up to this size are exact in a double
+  private static final double EXACT_LIMIT = 0x1p53;
+  //Gaussian integers a + bi for the primes 5, 13, 17, ... of the form 4k + 1. The product of all
+  //ten primes stays below 2^53.
+  private static final long[][] GAUSSIAN_PRIMES = {
+          {2, 1}, {3, 2}, {4, 1}, {5, 2}, {6, 1}, {5, 4}, {7, 2}, {6, 5}, {8, 3}, {8, 5}};
+
+  private SiteGenerator() {
+  }
+
+  /**
+   * Generates uniformly distributed sites
+   * @param count the number of sites
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param seed the seed
+   * @return the packed coordinates
+   */
+  public static double[] uniform(int count, double width, double height, long seed) {
+    checkCount(count);
+    checkBox(width, height);
+    double[] coords = new double[2 * count];
+    forEachChunk(count, seed, (rand, from, to) -> {
+      for (int i = from; i < to; i++) {
+        coords[2 * i] = inside(rand, width);
+        coords[2 * i + 1] = inside(rand, height);
+      }
+    });
+    return coords;
+  }
+
+  /**
+   * Generates sites in Gaussian clusters around uniformly placed centers. Sites falling outside
+   * the diagram are drawn again.
+   * @param count the number of sites
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param clusters the number of clusters
+   * @param sigma the standard deviation of each cluster
+   * @param seed the seed
+   * @return the packed coordinates
+   */
+  public static double[] gaussianClusters(int count, double width, double height, int clusters,
+                                          double sigma, long seed) {
+    if (clusters < 1) {
+      throw new IllegalArgumentException("Need at least one cluster!");
+    }
+    if (!(sigma >= 0 && sigma < Double.POSITIVE_INFINITY)) {
+      throw new IllegalArgumentException("Sigma must be finite and not negative!");
+    }
+    checkCount(count);
+    double[] centers = uniform(clusters, width, height, seed);
+    double[] coords = new double[2 * count];
+    forEachChunk(count, ~seed, (rand, from, to) -> {
+      for (int i = from; i < to; i++) {
+        int c = rand.nextInt(clusters);
+        double x;
+        double y;
+        do {
+          x = centers[2 * c] + gaussian(rand) * sigma;
+          y = centers[2 * c + 1] + gaussian(rand) * sigma;
+        } while (!(x > 0 && x < width && y > 0 && y < height));
+        coords[2 * i] = x;
+        coords[2 * i + 1] = y;
+      }
+    });
+    return coords;
+  }
+
+  /**
+   * Generates a grid of sites, each moved randomly within its cell. A jitter of 0 gives the
+   * exact grid, a degenerate input where many sites share rows and columns and four sites share
+   * every circle.
+   * @param columns the number of columns
+   * @param rows the number of rows
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param jitter how far a site may move, as a fraction of the cell size from 0 up to 1
+   * @param seed the seed
+   * @return the packed coordinates
+   */
+  public static double[] jitteredGrid(int columns, int rows, double width, double height,
+                                      double jitter, long seed) {
+    if (!(jitter >= 0 && jitter < 1)) {
+      throw new IllegalArgumentException("Jitter must be at least 0 and less than 1!");
+    }
+    if (columns < 1 || rows < 1 || (long) columns * rows > Integer.MAX_VALUE / 2) {
+      throw new IllegalArgumentException("Need at least one column and row, and at most "
+              + Integer.MAX_VALUE / 2 + " sites!");
+    }
+    checkBox(width, height);
+    double cellW = width / columns;
+    double cellH = height / rows;
+    double[] coords = new double[2 * columns * rows];
+    forEachChunk(columns * rows, seed, (rand, from, to) -> {
+      for (int i = from; i < to; i++) {
+        int col = i % columns;
+        int row = i / columns;
+        double dx = jitter == 0 ? 0 : (rand.nextDouble() - 0.5) * jitter;
+        double dy = jitter == 0 ? 0 : (rand.nextDouble() - 0.5) * jitter;
+        coords[2 * i] = (col + 0.5 + dx) * cellW;
+        coords[2 * i + 1] = (row + 0.5 + dy) * cellH;
+      }
+    });
+    return coords;
+  }
+
+  /**
+   * Generates sites with no two closer than the given radius, using Bridson's Poisson-disk
+   * sampling over a background grid. The sampling grows outwards from one site, so it runs on a
+   * single thread.
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param radius the smallest distance between sites
+   * @param seed the seed
+   * @return the packed coordinates
+   */
+  public static double[] poissonDisk(double width, double height, double radius, long seed) {
+    checkBox(width, height);
+    if (!(radius > 0)) {
+      throw new IllegalArgumentException("Radius must be positive!");
+    }
+    //Each grid cell is small enough to hold at most one site
+    double cell = radius / Math.sqrt(2);
+    if (Math.ceil(width / cell) * Math.ceil(height / cell) > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Radius too small for the diagram!");
+    }
+    int cols = (int) Math.ceil(width / cell);
+    int rows = (int) Math.ceil(height / cell);
+    int[] grid = new int[cols * rows];
+    Arrays.fill(grid, -1);
+    SplittableRandom rand = new SplittableRandom(seed);
+
+    double[] coords = new double[64];
+    int count = 0;
+    int[] active = new int[16];
+    int activeCount = 0;
+
+    double x0 = inside(rand, width);
+    double y0 = inside(rand, height);
+    coords[0] = x0;
+    coords[1] = y0;
+    grid[(int) (y0 / cell) * cols + (int) (x0 / cell)] = 0;
+    active[activeCount++] = count++;
+
+    double r2 = radius * radius;
+    while (activeCount > 0) {
+      int slot = rand.nextInt(activeCount);
+      int site = active[slot];
+      boolean placed = false;
+      //Try candidates in the ring between radius and twice the radius
+      for (int attempt = 0; attempt < 30 && !placed; attempt++) {
+        double angle = rand.nextDouble() * 2 * Math.PI;
+        double dist = radius * (1 + rand.nextDouble());
+        double x = coords[2 * site] + dist * Math.cos(angle);
+        double y = coords[2 * site + 1] + dist * Math.sin(angle);
+        if (!(x > 0 && x < width && y > 0 && y < height)) continue;
+        int cx = (int) (x / cell);
+        int cy = (int) (y / cell);
+        boolean clear = true;
+        for (int gy = Math.max(0, cy - 2); gy <= Math.min(rows - 1, cy + 2) && clear; gy++) {
+          for (int gx = Math.max(0, cx - 2); gx <= Math.min(cols - 1, cx + 2); gx++) {
+            int other = grid[gy * cols + gx];
+            if (other < 0) continue;
+            double ox = coords[2 * other] - x;
+            double oy = coords[2 * other + 1] - y;
+            if (ox * ox + oy * oy < r2) {
+              clear = false;
+              break;
+            }
+          }
+        }
+        if (!clear) continue;
+        if (2 * count + 2 > coords.length) coords = Arrays.copyOf(coords, coords.length * 2);
+        if (activeCount == active.length) active = Arrays.copyOf(active, active.length * 2);
+        coords[2 * count] = x;
+        coords[2 * count + 1] = y;
+        grid[cy * cols + cx] = count;
+        active[activeCount++] = count++;
+        placed = true;
+      }
+      if (!placed) {
+        active[slot] = active[--activeCount];
+      }
+    }
+    return Arrays.copyOf(coords, 2 * count);
+  }
+
+  /**
+   * Generates sites evenly spaced along a line through the middle of the diagram. The sites are
+   * the center plus integer multiples of (dx, dy) times one power of two, so every coordinate is
+   * exact, every three sites are exactly collinear and no circle events exist.
+   * @param count the number of sites
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param dx the x step of the line's direction
+   * @param dy the y step of the line's direction, not 0 if dx is
+   * @return the packed coordinates
+   */
+  public static double[] collinear(int count, double width, double height, int dx, int dy) {
+    checkCount(count);
+    checkBox(width, height);
+    if (dx == 0 && dy == 0) {
+      throw new IllegalArgumentException("The direction must not be zero!");
+    }
+    //The largest power of two step that keeps the line, and the rounding of the center, well
+    //inside the box: the center moves by up to half a step and each end reaches (count - 1)
+    //steps from it
+    double spanX = ((count - 1) * (double) Math.abs(dx) + 1) / (0.45 * width);
+    double spanY = ((count - 1) * (double) Math.abs(dy) + 1) / (0.45 * height);
+    double step = Math.scalb(1.0, -Math.getExponent(Math.max(spanX, spanY)) - 1);
+    double cx = Math.rint(width / 2 / step) * step;
+    double cy = Math.rint(height / 2 / step) * step;
+    checkExact(cx, cy, step, count * Math.max(Math.abs((double) dx), Math.abs((double) dy)));
+
+    double[] coords = new double[2 * count];
+    for (int i = 0; i < count; i++) {
+      //Offsets of -(count - 1) / 2 .. (count - 1) / 2, in half steps so they stay integers
+      long t = 2L * i - (count - 1);
+      coords[2 * i] = cx + t * dx * (step / 2);
+      coords[2 * i + 1] = cy + t * dy * (step / 2);
+    }
+    return coords;
+  }
+
+  /**
+   * Generates sites on a circle centered in the diagram, spread evenly by angle. The sites are
+   * integer points of a circle whose radius is a product of primes of the form 4k + 1, which has
+   * 4 * 3^k of them, scaled by a power of two. So every coordinate is exact, all sites are exactly
+   * cocircular and every circle event happens at the same point.
+   * @param count the number of sites, at most 4 * 3^10
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @return the packed coordinates
+   */
+  public static double[] cocircular(int count, double width, double height) {
+    checkCount(count);
+    checkBox(width, height);
+    //Each prime p = a^2 + b^2 in the radius triples the integer points: every point of the
+    //smaller circle is multiplied by (a + bi)^2, by p or by (a - bi)^2
+    long[] xs = {1};
+    long[] ys = {0};
+    long radius = 1;
+    int k = 0;
+    while (4L * xs.length < count) {
+      if (k == GAUSSIAN_PRIMES.length) {
+        throw new IllegalArgumentException("At most " + 4 * xs.length
+                + " sites can be placed exactly on one circle!");
+      }
+      long a = GAUSSIAN_PRIMES[k][0];
+      long b = GAUSSIAN_PRIMES[k][1];
+      long p = a * a + b * b;
+      long[][] factors = {{a * a - b * b, 2 * a * b}, {p, 0}, {a * a - b * b, -2 * a * b}};
+      long[] nextX = new long[3 * xs.length];
+      long[] nextY = new long[3 * xs.length];
+      for (int i = 0; i < xs.length; i++) {
+        for (int f = 0; f < 3; f++) {
+          nextX[3 * i + f] = xs[i] * factors[f][0] - ys[i] * factors[f][1];
+          nextY[3 * i + f] = xs[i] * factors[f][1] + ys[i] * factors[f][0];
+        }
+      }
+      xs = nextX;
+      ys = nextY;
+      radius *= p;
+      k++;
+    }
+
+    //Turn by the four units to get every point, then order them by angle
+    int total = 4 * xs.length;
+    double[] angles = new double[total];
+    long[][] points = new long[total][];
+    for (int i = 0; i < xs.length; i++) {
+      long x = xs[i];
+      long y = ys[i];
+      for (int u = 0; u < 4; u++) {
+        points[4 * i + u] = new long[]{x, y};
+        long turned = -y;
+        y = x;
+        x = turned;
+      }
+    }
+    Integer[] order = new Integer[total];
+    for (int i = 0; i < total; i++) {
+      order[i] = i;
+      angles[i] = Math.atan2(points[i][1], points[i][0]);
+    }
+    Arrays.sort(order, (i, j) -> Double.compare(angles[i], angles[j]));
+
+    //Rounding the center moves it by up to half a unit, which the circle must still fit around
+    double scale = Math.scalb(1.0,
+            Math.getExponent(0.45 * Math.min(width, height) / (radius + 0.5)));
+    double cx = Math.rint(width / 2 / scale) * scale;
+    double cy = Math.rint(height / 2 / scale) * scale;
+    checkExact(cx, cy, scale, radius);
+    double[] coords = new double[2 * count];
+    for (int i = 0; i < count; i++) {
+      long[] point = points[order[(int) ((long) i * total / count)]];
+      coords[2 * i] = cx + point[0] * scale;
+      coords[2 * i + 1] = cy + point[1] * scale;
+    }
+    return coords;
+  }
+
+  //******************************HELPERS***************************************//
+
+  /**
+   * Converts packed coordinates into sites for the Voronoi generator
+   * @param coords the packed coordinates
+   * @return the sites
+   */
+  public static ArrayList<Point> toPoints(double[] coords) {
+    ArrayList<Point> sites = new ArrayList<>(coords.length / 2);
+    for (int i = 0; i + 1 < coords.length; i += 2) {
+      sites.add(new Point(coords[i], coords[i + 1]));
+    }
+    return sites;
+  }
+
+  /**
+   * Fills a range of sites from one random stream
+   */
+  private interface ChunkFiller {
+    void fill(SplittableRandom rand, int from, int to);
+  }
+
+  /**
+   * Cuts the sites into fixed chunks, each filled from its own stream, and fills them in parallel
+   * when there is more than one
+   */
+  private static void forEachChunk(int count, long seed, ChunkFiller filler) {
+    int chunks = (count + CHUNK - 1) / CHUNK;
+    //Split the streams in order on this thread so chunk c always gets the same one. Seeding
+    //chunks with seed + c * gamma would only replay one stream shifted by c draws.
+    SplittableRandom root = new SplittableRandom(seed);
+    SplittableRandom[] streams = new SplittableRandom[chunks];
+    for (int c = 0; c < chunks; c++) {
+      streams[c] = root.split();
+    }
+    IntStream range = IntStream.range(0, chunks);
+    if (chunks > 1) range = range.parallel();
+    range.forEach(c -> filler.fill(streams[c], c * CHUNK, Math.min(count, (c + 1) * CHUNK)));
+  }
+
+  private static void checkCount(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Site count must not be negative!");
+    }
+  }
+
+  private static void checkBox(double width, double height) {
+    if (!(width > 0 && width < Double.POSITIVE_INFINITY
+            && height > 0 && height < Double.POSITIVE_INFINITY)) {
+      throw new IllegalArgumentException("Width and height must be positive and finite!");
+    }
+  }
+
+  /**
+   * Checks that a center on the grid of the given unit plus up to reach units stays an integer
+   * number of units below 2^53, so no coordinate is rounded
+   */
+  private static void checkExact(double cx, double cy, double unit, double reach) {
+    if (Math.max(cx, cy) / unit + reach >= EXACT_LIMIT) {
+      throw new IllegalArgumentException("Too many sites to place exactly in this diagram!");
+    }
+  }
+
+  /**
+   * Draws a coordinate strictly between 0 and the given size
+   */
+  private static double inside(SplittableRandom rand, double size) {
+    double d;
+    do {
+      d = rand.nextDouble() * size;
+    } while (d <= 0 || d >= size);
+    return d;
+  }
+
+  /**
+   * Draws from the standard normal distribution with the polar method
+   */
+  private static double gaussian(SplittableRandom rand) {
+    double u;
+    double v;
+    double s;
+    do {
+      u = 2 * rand.nextDouble() - 1;
+      v = 2 * rand.nextDouble() - 1;
+      s = u * u + v * v;
+    } while (s >= 1 || s == 0);
+    return u * Math.sqrt(-2 * Math.log(s) / s);
+  }
+}
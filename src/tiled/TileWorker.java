@@ -0,0 +1,161 @@
+package tiled;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import voronoidiagram.DiagramSnapshot;
+import voronoidiagram.Edge;
+import voronoidiagram.Point;
+import voronoidiagram.Util;
+import voronoidiagram.Voronoi;
+
+/**
+ * Builds the diagram of one tile. The tile's sites, including those in its halo, are read from a
+ * bucket of packed big-endian x, y doubles and swept in coordinates local to the tile. Only the
+ * edges owned by the tile are kept: an edge belongs to the tile holding the lower of its two sites
+ * in sweep order, so an edge shared with a neighboring tile is written exactly once. The kept
+ * edges are clipped to the whole domain and written in the binary edge format of the diagram
+ * service: int count, then x1, y1, x2, y2 doubles per edge, in global coordinates.
+ *
+ * Runs inside the tiled builder's process or, through {@link #main}, as a worker process of its
+ * own.
+ */
+public class TileWorker {
+  //The tile's own area, [minX, maxX) x [minY, maxY)
+  private final double minX;
+  private final double minY;
+  private final double maxX;
+  private final double maxY;
+  private final double halo;
+  //The whole domain, 0..width x 0..height
+  private final double width;
+  private final double height;
+
+  public TileWorker(double minX, double minY, double maxX, double maxY, double halo,
+                    double width, double height) {
+    this.minX = minX;
+    this.minY = minY;
+    this.maxX = maxX;
+    this.maxY = maxY;
+    this.halo = halo;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Builds the tile from its bucket and writes its edges
+   * @param bucket the packed sites of the tile and its halo
+   * @param out the file to write the edges to
+   * @return the number of edges written
+   * @throws IOException if reading or writing fails
+   */
+  public int build(Path bucket, Path out) throws IOException {
+    double[] coords = readBucket(bucket);
+    double originX = minX - halo;
+    double originY = minY - halo;
+
+    //Sweep in local coordinates, remembering which global site each local site came from
+    ArrayList<Point> local = new ArrayList<>(coords.length / 2);
+    for (int i = 0; i < coords.length; i += 2) {
+      local.add(new Point(coords[i] - originX, coords[i + 1] - originY));
+    }
+    int localW = (int) Math.ceil(maxX - minX + 2 * halo);
+    int localH = (int) Math.ceil(maxY - minY + 2 * halo);
+    DiagramSnapshot diagram = new Voronoi(localW, localH, local).snapshot();
+
+    double[] kept = new double[64];
+    int count = 0;
+    double[] range = new double[2];
+    for (Edge e : diagram.edges) {
+      int owner = owner(coords, diagram.indexOf(e.leftSite), diagram.indexOf(e.rightSite));
+      if (owner < 0 || !inTile(coords[2 * owner], coords[2 * owner + 1])) continue;
+
+      double x1 = e.start.x + originX;
+      double y1 = e.start.y + originY;
+      double dx = e.end.x + originX - x1;
+      double dy = e.end.y + originY - y1;
+      range[0] = 0;
+      range[1] = 1;
+      if (!Util.clipRange(-dx, x1, range)
+              || !Util.clipRange(dx, width - x1, range)
+              || !Util.clipRange(-dy, y1, range)
+              || !Util.clipRange(dy, height - y1, range)) {
+        continue;
+      }
+      if (4 * count + 4 > kept.length) kept = Arrays.copyOf(kept, kept.length * 2);
+      kept[4 * count] = x1 + range[0] * dx;
+      kept[4 * count + 1] = y1 + range[0] * dy;
+      kept[4 * count + 2] = x1 + range[1] * dx;
+      kept[4 * count + 3] = y1 + range[1] * dy;
+      count++;
+    }
+
+    try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(out), 1 << 16))) {
+      data.writeInt(count);
+      for (int i = 0; i < 4 * count; i++) {
+        data.writeDouble(kept[i]);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Picks the site that owns an edge: the lower of the two in sweep order, by global coordinates
+   * @return the index of the owning site, or -1 if either site is unknown
+   */
+  private static int owner(double[] coords, int a, int b) {
+    if (a < 0 || b < 0) return -1;
+    int yComp = Double.compare(coords[2 * a + 1], coords[2 * b + 1]);
+    if (yComp != 0) return yComp < 0 ? a : b;
+    return Double.compare(coords[2 * a], coords[2 * b]) <= 0 ? a : b;
+  }
+
+  private boolean inTile(double x, double y) {
+    return x >= minX && x < maxX && y >= minY && y < maxY;
+  }
+
+  /**
+   * Reads a whole bucket of packed sites through a memory map
+   */
+  private static double[] readBucket(Path bucket) throws IOException {
+    try (FileChannel channel = FileChannel.open(bucket, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Tile " + bucket + " is too large; use more tiles");
+      }
+      DoubleBuffer doubles = channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+              .asDoubleBuffer();
+      double[] coords = new double[doubles.remaining() & ~1];
+      doubles.get(coords);
+      return coords;
+    }
+  }
+
+  /**
+   * Builds one tile as a worker process
+   * @param args bucket, output, minX, minY, maxX, maxY, halo, width, height
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 9) {
+      System.err.println("Usage:\n" +
+              "\t Bucket Output MinX MinY MaxX MaxY Halo Width Height \n");
+      System.exit(2);
+    }
+    double[] n = new double[7];
+    for (int i = 0; i < 7; i++) {
+      n[i] = Double.parseDouble(args[i + 2]);
+    }
+    new TileWorker(n[0], n[1], n[2], n[3], n[4], n[5], n[6])
+            .build(Paths.get(args[0]), Paths.get(args[1]));
+  }
+}
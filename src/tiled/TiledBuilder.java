@@ -0,0 +1,234 @@
+package tiled;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds diagrams too large for memory by cutting the domain into a grid of tiles. Each tile is
+ * built on its own from the sites inside it plus a halo margin around it, and only the edges of
+ * the tile's own cells are kept. The result is correct as long as the halo is wider than the
+ * largest cell radius near the tile borders; a few site spacings is plenty for evenly spread
+ * sites.
+ *
+ * The sites are read from a file of packed big-endian x, y doubles through memory maps, so the
+ * input never has to fit in the heap. A first pass copies every site into the bucket file of each
+ * tile whose haloed area holds it, keeping at most MAX_OPEN_BUCKETS files open at once (more tiles
+ * take more passes). Each tile is then built by a {@link TileWorker}, either on a thread of this
+ * process or in a separate worker process, and written to its own file in the output directory.
+ * Only one tile per worker needs to fit in memory.
+ */
+public class TiledBuilder {
+  //The most bucket files written at once during partitioning
+  private static final int MAX_OPEN_BUCKETS = 256;
+  //The most bytes mapped at once while reading the input, a multiple of one site
+  private static final long MAP_BYTES = 1L << 30;
+
+  private final double width;
+  private final double height;
+  private final int tilesX;
+  private final int tilesY;
+  private final double halo;
+  //The number of tiles built at once, and whether each runs in its own process
+  private final int workers;
+  private final boolean separateProcesses;
+
+  /**
+   * Creates a tiled builder
+   * @param width the width of the domain
+   * @param height the height of the domain
+   * @param tilesX the number of tile columns
+   * @param tilesY the number of tile rows
+   * @param halo the margin of sites around each tile included in its build
+   * @param workers the number of tiles built at once
+   * @param separateProcesses whether each tile is built in a worker process of its own
+   */
+  public TiledBuilder(double width, double height, int tilesX, int tilesY, double halo,
+                      int workers, boolean separateProcesses) {
+    if (!(width > 0 && height > 0) || tilesX < 1 || tilesY < 1 || !(halo > 0) || workers < 1) {
+      throw new IllegalArgumentException("Dimensions, tiles, halo and workers must be positive!");
+    }
+    this.width = width;
+    this.height = height;
+    this.tilesX = tilesX;
+    this.tilesY = tilesY;
+    this.halo = halo;
+    this.workers = workers;
+    this.separateProcesses = separateProcesses;
+  }
+
+  /**
+   * Builds every tile of the diagram
+   * @param sites the file of packed sites
+   * @param outDir the directory the tile files are written to
+   * @return the tile files, row by row
+   * @throws IOException if reading, writing or a worker fails
+   */
+  public List<Path> build(Path sites, Path outDir) throws IOException {
+    Files.createDirectories(outDir);
+    Path buckets = Files.createTempDirectory(outDir, "buckets");
+    try {
+      partition(sites, buckets);
+      return buildTiles(buckets, outDir);
+    } finally {
+      for (int t = 0; t < tilesX * tilesY; t++) {
+        Files.deleteIfExists(bucket(buckets, t));
+      }
+      Files.deleteIfExists(buckets);
+    }
+  }
+
+  //******************************PARTITIONING***************************************//
+
+  /**
+   * Copies every site into the buckets of the tiles whose haloed area holds it
+   */
+  private void partition(Path sites, Path buckets) throws IOException {
+    int tiles = tilesX * tilesY;
+    for (int first = 0; first < tiles; first += MAX_OPEN_BUCKETS) {
+      int last = Math.min(tiles, first + MAX_OPEN_BUCKETS);
+      DataOutputStream[] out = new DataOutputStream[last - first];
+      try {
+        for (int t = first; t < last; t++) {
+          out[t - first] = new DataOutputStream(new BufferedOutputStream(
+                  Files.newOutputStream(bucket(buckets, t)), 1 << 15));
+        }
+        scan(sites, first, last, out);
+      } finally {
+        for (DataOutputStream o : out) {
+          if (o != null) o.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads all sites once, writing each to the open buckets of tiles first..last-1 that hold it
+   */
+  private void scan(Path sites, int first, int last, DataOutputStream[] out) throws IOException {
+    double tileW = width / tilesX;
+    double tileH = height / tilesY;
+    try (FileChannel channel = FileChannel.open(sites, StandardOpenOption.READ)) {
+      long size = channel.size() & ~15L;
+      for (long pos = 0; pos < size; pos += MAP_BYTES) {
+        DoubleBuffer doubles = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                Math.min(MAP_BYTES, size - pos)).order(ByteOrder.BIG_ENDIAN).asDoubleBuffer();
+        while (doubles.remaining() >= 2) {
+          double x = doubles.get();
+          double y = doubles.get();
+          //The tiles whose haloed area may hold the site
+          int tx0 = Math.max(0, (int) Math.floor((x - halo) / tileW));
+          int tx1 = Math.min(tilesX - 1, (int) Math.floor((x + halo) / tileW));
+          int ty0 = Math.max(0, (int) Math.floor((y - halo) / tileH));
+          int ty1 = Math.min(tilesY - 1, (int) Math.floor((y + halo) / tileH));
+          for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+              int t = ty * tilesX + tx;
+              if (t < first || t >= last) continue;
+              //Sites must be strictly inside the haloed area, which is the tile's local diagram
+              if (x > tx * tileW - halo && x < (tx + 1) * tileW + halo
+                      && y > ty * tileH - halo && y < (ty + 1) * tileH + halo) {
+                out[t - first].writeDouble(x);
+                out[t - first].writeDouble(y);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  //******************************BUILDING***************************************//
+
+  private List<Path> buildTiles(Path buckets, Path outDir) throws IOException {
+    double tileW = width / tilesX;
+    double tileH = height / tilesY;
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    List<Future<Path>> futures = new ArrayList<>();
+    for (int ty = 0; ty < tilesY; ty++) {
+      for (int tx = 0; tx < tilesX; tx++) {
+        int t = ty * tilesX + tx;
+        //The last row and column end exactly on the domain, whatever the rounding
+        double[] tile = {tx * tileW, ty * tileH,
+                tx == tilesX - 1 ? width : (tx + 1) * tileW,
+                ty == tilesY - 1 ? height : (ty + 1) * tileH};
+        Path out = outDir.resolve("tile-" + tx + "-" + ty + ".edges");
+        futures.add(pool.submit(() -> {
+          buildTile(bucket(buckets, t), out, tile);
+          return out;
+        }));
+      }
+    }
+    pool.shutdown();
+
+    List<Path> results = new ArrayList<>(futures.size());
+    try {
+      for (Future<Path> f : futures) {
+        results.add(f.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      pool.shutdownNow();
+      throw new IOException("Interrupted while building tiles", e);
+    } catch (ExecutionException e) {
+      pool.shutdownNow();
+      throw new IOException("A tile failed to build", e.getCause());
+    }
+    return results;
+  }
+
+  private void buildTile(Path bucket, Path out, double[] tile)
+          throws IOException, InterruptedException {
+    if (!separateProcesses) {
+      new TileWorker(tile[0], tile[1], tile[2], tile[3], halo, width, height).build(bucket, out);
+      return;
+    }
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            TileWorker.class.getName(), bucket.toString(), out.toString(),
+            Double.toString(tile[0]), Double.toString(tile[1]), Double.toString(tile[2]),
+            Double.toString(tile[3]), Double.toString(halo), Double.toString(width),
+            Double.toString(height))
+            .inheritIO()
+            .start();
+    int exit = process.waitFor();
+    if (exit != 0) {
+      throw new IOException("Worker for " + out + " exited with " + exit);
+    }
+  }
+
+  private static Path bucket(Path buckets, int tile) {
+    return buckets.resolve("bucket-" + tile + ".bin");
+  }
+
+  //******************************COMMAND LINE***************************************//
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 7) {
+      System.out.println("Usage:\n" +
+              "\t Sites OutDir Width Height TilesX TilesY Halo [Workers [processes]] \n");
+      return;
+    }
+    int workers = args.length > 7 ? Integer.parseInt(args[7])
+            : Runtime.getRuntime().availableProcessors();
+    boolean processes = args.length > 8 && args[8].equals("processes");
+    TiledBuilder builder = new TiledBuilder(Double.parseDouble(args[2]),
+            Double.parseDouble(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]),
+            Double.parseDouble(args[6]), workers, processes);
+    List<Path> tiles = builder.build(Paths.get(args[0]), Paths.get(args[1]));
+    System.out.println("Wrote " + tiles.size() + " tiles to " + args[1]);
+  }
+}
@@ -0,0 +1,71 @@
+package verify;
+
+import java.util.List;
+
+import sitegen.SiteGenerator;
+
+/**
+ * Times every build mode of the {@link DifferentialHarness}, but only once the harness has passed
+ * on the same tree, so a speedup is never reported for a build that gives a different diagram.
+ * Exits with a non-zero status if the harness fails.
+ *
+ * Each mode builds the same uniform site set, prepared the way the mode takes it, once to warm up
+ * and then for the given number of rounds. The box grows with the site count so the sites stay
+ * about ten units apart, as on a large raster.
+ */
+public class BuildBenchmark {
+  //The most sites in one harness trial
+  private static final int HARNESS_SITES = 200;
+  //The mean distance between sites
+  private static final double SPACING = 10;
+
+  public static void main(String[] args) {
+    int sites;
+    int rounds;
+    int trials;
+    long seed;
+    try {
+      sites = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+      rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+      trials = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+      seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+      if (sites < 1 || rounds < 1 || trials < 0) throw new NumberFormatException();
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+              "\t [Sites [Rounds [HarnessTrials [Seed]]]] \n");
+      return;
+    }
+    System.out.println("Seed: " + seed);
+
+    //The gate: nothing is timed unless every mode gives the oracle's diagram
+    DifferentialHarness harness = new DifferentialHarness(DifferentialHarness.defaultModes(),
+            HARNESS_SITES);
+    DifferentialHarness.Failure failure = harness.run(trials, seed);
+    if (failure != null) {
+      System.out.println(failure);
+      System.exit(1);
+    }
+    System.out.println("Harness: " + trials + " trials passed");
+    DifferentialHarness.printCoverage(harness, trials);
+
+    int side = (int) Math.ceil(Math.sqrt((double) sites) * SPACING);
+    double[] coords = SiteGenerator.uniform(sites, side, side, seed);
+    System.out.println(sites + " sites in " + side + "x" + side + ", " + rounds + " rounds");
+    List<DifferentialHarness.BuildMode> modes = harness.modes();
+    for (DifferentialHarness.BuildMode mode : modes) {
+      double[] prepared = mode.prepare(coords);
+      int edges = mode.build(side, side, prepared).length / 4;
+      long best = Long.MAX_VALUE;
+      long total = 0;
+      for (int r = 0; r < rounds; r++) {
+        long start = System.nanoTime();
+        mode.build(side, side, prepared);
+        long nanos = System.nanoTime() - start;
+        best = Math.min(best, nanos);
+        total += nanos;
+      }
+      System.out.println("\t " + mode.name() + ": best " + best / 1_000_000 + " ms, mean "
+              + total / rounds / 1_000_000 + " ms, " + edges + " edges");
+    }
+  }
+}
@@ -0,0 +1,930 @@
+package verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import export.DiagramExporter;
+import sitegen.SiteGenerator;
+import tiled.TiledBuilder;
+import voronoidiagram.CellMetrics;
+import voronoidiagram.CompactDiagram;
+import voronoidiagram.ConvexRegion;
+import voronoidiagram.DiagramSnapshot;
+import voronoidiagram.Edge;
+import voronoidiagram.Point;
+import voronoidiagram.Predicates;
+import voronoidiagram.Voronoi;
+import voronoidiagram.VoronoiBatch;
+
+/**
+ * Checks every way of building a diagram against a brute-force nearest-site oracle on random
+ * inputs, so a faster build path can be shown to give the same diagram before it lands.
+ * {@link BuildBenchmark} runs it before timing anything; on its own it exits with a non-zero
+ * status on the first failure.
+ *
+ * For each trial a site set is drawn from one of the site generators, including the degenerate
+ * ones and rows of sites a few ulps apart, and built by every {@link BuildMode}. The packed edges
+ * are then checked three ways, each answered by an O(n) scan over all sites:
+ * - every edge lies within the diagram,
+ * - the midpoint of every edge is equally far from its two nearest sites, so it is on a true
+ *   bisector, and
+ * - for sampled pairs of nearby points, the segment between them crosses no edge when the oracle
+ *   puts both in the same cell and at least one edge when it does not. This catches missing edges
+ *   as well as extra ones.
+ *
+ * Each site set is also built as a snapshot, clipped once to the box and once to a region inside
+ * it, and its cell metrics are checked: the cell areas must add up to the area of the box or
+ * region, repeated sites must have no cell of their own, every exported cell must be written once
+ * with its measured area, and looking up the cell under a point must give the first of the
+ * nearest sites. The orientation and in-circle predicates are compared with an exact oracle of
+ * their own on quadruples of sites nudged by a few ulps.
+ *
+ * A mode is only checked on site sets it promises to build exactly. The tiled mode runs as a large
+ * build would, with a grid of tiles and a halo of a few mean site spacings, so it only promises
+ * sets whose largest empty circle is at most half the halo; the number of trials each mode was
+ * checked on is reported.
+ *
+ * A failing input is shrunk by removing ever smaller runs of sites while it still fails, and the
+ * smallest failing site set is printed so it can be replayed.
+ */
+public class DifferentialHarness {
+  //Distances this close, relative to the diagram size, are treated as equal
+  private static final double RELATIVE_TOLERANCE = 1e-6;
+  //The number of point pairs sampled per check
+  private static final int SAMPLES = 64;
+  //Directions of the collinear site sets
+  private static final int[][] LINES = {{1, 0}, {0, 1}, {1, 1}, {1, -1}, {2, 1}, {1, -3}};
+  //The tiles of the tiled mode, and its halo in mean site spacings
+  private static final int TILES_X = 4;
+  private static final int TILES_Y = 3;
+  private static final double HALO_SPACINGS = 4;
+  //The names failures of the checks outside the build modes are reported under
+  private static final String CELLS = "cells";
+  private static final String PREDICATES = "predicates";
+
+  /**
+   * Represents one check of a site set
+   */
+  private interface Check {
+    /**
+     * @return why the check failed, or null if it passed
+     */
+    String run(int width, int height, double[] sites);
+  }
+
+  /**
+   * Represents one way of building a diagram
+   */
+  public interface BuildMode {
+    String name();
+
+    /**
+     * Adjusts generated sites to what this mode can take, such as rounding them to floats
+     * @param coords the sites as x0, y0, x1, y1, ...
+     * @return the sites the mode is built and checked with
+     */
+    default double[] prepare(double[] coords) {
+      return coords;
+    }
+
+    /**
+     * Extra distance error this mode's output may carry, on top of the usual tolerance
+     */
+    default double tolerance(int width, int height) {
+      return 0;
+    }
+
+    /**
+     * Whether this mode promises the exact diagram of a site set. Sets it does not are skipped.
+     * @param coords the prepared sites as x0, y0, x1, y1, ...
+     */
+    default boolean accepts(int width, int height, double[] coords) {
+      return true;
+    }
+
+    /**
+     * Builds the diagram
+     * @param width the width of the diagram
+     * @param height the height of the diagram
+     * @param coords the sites as x0, y0, x1, y1, ...
+     * @return the edges as x1, y1, x2, y2 per edge
+     */
+    double[] build(int width, int height, double[] coords);
+  }
+
+  /**
+   * The build modes in the tree: full builds, batch builds, single-precision builds and tiled
+   * builds
+   */
+  public static List<BuildMode> defaultModes() {
+    List<BuildMode> modes = new ArrayList<>();
+    modes.add(new BuildMode() {
+      public String name() {
+        return "snapshot";
+      }
+
+      public double[] build(int width, int height, double[] coords) {
+        return pack(new Voronoi(width, height, SiteGenerator.toPoints(coords)).snapshot());
+      }
+    });
+    modes.add(new BuildMode() {
+      private final VoronoiBatch batch = new VoronoiBatch();
+
+      public String name() {
+        return "batch";
+      }
+
+      public double[] build(int width, int height, double[] coords) {
+        VoronoiBatch.Result result = batch.build(width, height, coords,
+                new int[]{0, coords.length / 2});
+        return Arrays.copyOf(result.edges, 4 * result.edgeCount(0));
+      }
+    });
+    modes.add(new BuildMode() {
+      public String name() {
+        return "compact";
+      }
+
+      public double[] prepare(double[] coords) {
+        double[] rounded = new double[coords.length];
+        for (int i = 0; i < coords.length; i++) {
+          rounded[i] = (float) coords[i];
+        }
+        return rounded;
+      }
+
+      public double tolerance(int width, int height) {
+        return 2 * Math.ulp((float) Math.max(width, height));
+      }
+
+      public double[] build(int width, int height, double[] coords) {
+        float[] floats = new float[coords.length];
+        for (int i = 0; i < coords.length; i++) {
+          floats[i] = (float) coords[i];
+        }
+        float[] edges = CompactDiagram.build(width, height, floats).edges;
+        double[] result = new double[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+          result[i] = edges[i];
+        }
+        return result;
+      }
+    });
+    modes.add(new BuildMode() {
+      public String name() {
+        return "tiled";
+      }
+
+      public boolean accepts(int width, int height, double[] coords) {
+        //Every point of a tile's own edges is then within half the halo of a site in the tile,
+        //and so are the sites deciding it
+        return 2 * largestEmptyCircle(width, height, coords) <= halo(width, height, coords);
+      }
+
+      public double[] build(int width, int height, double[] coords) {
+        return buildTiled(width, height, coords, TILES_X, TILES_Y, halo(width, height, coords));
+      }
+    });
+    return modes;
+  }
+
+  //******************************RUNNING***************************************//
+
+  /**
+   * Represents a failed check, shrunk to the smallest site set that still fails
+   */
+  public static final class Failure {
+    public final String mode;
+    public final String reason;
+    public final int width;
+    public final int height;
+    public final double[] sites;
+    public final long trialSeed;
+
+    Failure(String mode, String reason, int width, int height, double[] sites, long trialSeed) {
+      this.mode = mode;
+      this.reason = reason;
+      this.width = width;
+      this.height = height;
+      this.sites = sites;
+      this.trialSeed = trialSeed;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder s = new StringBuilder();
+      s.append(mode).append(" failed trial seed ").append(trialSeed).append(": ").append(reason)
+              .append("\n  ").append(width).append('x').append(height).append(", ")
+              .append(sites.length / 2).append(" sites:");
+      for (int i = 0; i < sites.length; i += 2) {
+        s.append("\n  ").append(sites[i]).append(", ").append(sites[i + 1]);
+      }
+      return s.toString();
+    }
+  }
+
+  private final List<BuildMode> modes;
+  private final int maxSites;
+  //The number of trials each mode was checked on
+  private final int[] checked;
+
+  /**
+   * Creates a harness
+   * @param modes the build modes to check
+   * @param maxSites the most sites in one trial
+   */
+  public DifferentialHarness(List<BuildMode> modes, int maxSites) {
+    if (maxSites < 1) {
+      throw new IllegalArgumentException("Trials need at least one site!");
+    }
+    this.modes = modes;
+    this.maxSites = maxSites;
+    this.checked = new int[modes.size()];
+  }
+
+  /**
+   * Counts the trials each mode was checked on so far, leaving out the site sets it does not
+   * accept
+   * @return the counts, indexed like the modes
+   */
+  public int[] checkedTrials() {
+    return checked.clone();
+  }
+
+  public List<BuildMode> modes() {
+    return modes;
+  }
+
+  /**
+   * Runs random trials against every mode
+   * @param trials the number of trials
+   * @param seed the seed the trials are drawn from
+   * @return the first failure, shrunk, or null if every trial passed
+   */
+  public Failure run(int trials, long seed) {
+    SplittableRandom rand = new SplittableRandom(seed);
+    for (int t = 0; t < trials; t++) {
+      Failure failure = trial(rand.nextLong());
+      if (failure != null) return failure;
+    }
+    return null;
+  }
+
+  /**
+   * Runs one trial against every mode. The same seed always gives the same sites and samples.
+   * @param trialSeed the seed of the trial
+   * @return the failure, shrunk, or null if every mode passed
+   */
+  public Failure trial(long trialSeed) {
+    SplittableRandom rand = new SplittableRandom(trialSeed);
+    int width = 50 + rand.nextInt(1500);
+    int height = 50 + rand.nextInt(1500);
+    double[] generated = generate(rand, width, height);
+    long sampleSeed = rand.nextLong();
+    for (int m = 0; m < modes.size(); m++) {
+      BuildMode mode = modes.get(m);
+      double[] sites = mode.prepare(generated);
+      if (!mode.accepts(width, height, sites)) continue;
+      checked[m]++;
+      Failure failure = failure(mode.name(), (w, h, s) -> check(mode, w, h, s, sampleSeed),
+              width, height, sites, trialSeed);
+      if (failure != null) return failure;
+    }
+    Failure failure = failure(CELLS, DifferentialHarness::checkCells, width, height, generated,
+            trialSeed);
+    if (failure != null) return failure;
+    return failure(PREDICATES, DifferentialHarness::checkPredicates, width, height, generated,
+            trialSeed);
+  }
+
+  /**
+   * Runs a check, shrinking the site set if it fails
+   * @return the failure, or null if the check passed
+   */
+  private static Failure failure(String name, Check check, int width, int height, double[] sites,
+                                 long trialSeed) {
+    if (check.run(width, height, sites) == null) return null;
+    double[] smallest = shrink(check, width, height, sites);
+    return new Failure(name, check.run(width, height, smallest), width, height, smallest,
+            trialSeed);
+  }
+
+  /**
+   * Draws a site set from a randomly chosen generator
+   */
+  private double[] generate(SplittableRandom rand, int width, int height) {
+    int n = 1 + rand.nextInt(maxSites);
+    long seed = rand.nextLong();
+    switch (rand.nextInt(9)) {
+      case 0:
+        return SiteGenerator.gaussianClusters(n, width, height, 1 + rand.nextInt(5),
+                Math.min(width, height) / 20.0, seed);
+      case 1: {
+        //Exact grids share rows, columns and circles everywhere, and grids jittered by
+        //10^-15 to 10^-6 nearly do, which is where rounding can misorder events
+        int columns = 1 + rand.nextInt((int) Math.sqrt(n) + 1);
+        double jitter;
+        switch (rand.nextInt(3)) {
+          case 0:
+            jitter = 0;
+            break;
+          case 1:
+            jitter = Math.pow(10, -(6 + 9 * rand.nextDouble()));
+            break;
+          default:
+            jitter = rand.nextDouble();
+        }
+        return SiteGenerator.jitteredGrid(columns, Math.max(1, n / columns), width, height,
+                jitter, seed);
+      }
+      case 2: {
+        //Integer coordinates give many repeated sites and shared rows
+        double[] coords = SiteGenerator.uniform(n, width, height, seed);
+        for (int i = 0; i < coords.length; i += 2) {
+          coords[i] = Math.max(1, Math.min(width - 1, Math.rint(coords[i])));
+          coords[i + 1] = Math.max(1, Math.min(height - 1, Math.rint(coords[i + 1])));
+        }
+        return coords;
+      }
+      case 3: {
+        int[] direction = LINES[rand.nextInt(LINES.length)];
+        return SiteGenerator.collinear(n, width, height, direction[0], direction[1]);
+      }
+      case 4:
+        return SiteGenerator.cocircular(Math.min(n, 64), width, height);
+      case 5:
+        return SiteGenerator.poissonDisk(width, height,
+                Math.sqrt((double) width * height / n), seed);
+      case 6: {
+        //Every site repeated up to three times, in shuffled order
+        double[] distinct = SiteGenerator.uniform(Math.max(1, n / 2), width, height, seed);
+        double[] coords = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+          int from = i < distinct.length / 2 ? i : rand.nextInt(distinct.length / 2);
+          coords[2 * i] = distinct[2 * from];
+          coords[2 * i + 1] = distinct[2 * from + 1];
+        }
+        for (int i = n - 1; i > 0; i--) {
+          int j = rand.nextInt(i + 1);
+          double x = coords[2 * i];
+          double y = coords[2 * i + 1];
+          coords[2 * i] = coords[2 * j];
+          coords[2 * i + 1] = coords[2 * j + 1];
+          coords[2 * j] = x;
+          coords[2 * j + 1] = y;
+        }
+        return coords;
+      }
+      case 7: {
+        //Sites on a few rows, each moved a few ulps off its row, so that arcs are barely
+        //parabolas when the next site on the row arrives and some sites nearly repeat
+        int rows = 1 + rand.nextInt(4);
+        double[] coords = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+          double x = Math.rint(1 + rand.nextDouble() * (width - 2));
+          double y = Math.rint((1 + rand.nextInt(rows)) * height / (rows + 1.0));
+          coords[2 * i] = nudge(x, rand);
+          coords[2 * i + 1] = nudge(y, rand);
+        }
+        return coords;
+      }
+      default:
+        return SiteGenerator.uniform(n, width, height, seed);
+    }
+  }
+
+
+  //******************************CHECKING***************************************//
+
+  /**
+   * Builds a site set with one mode and checks the edges against the oracle
+   * @return why the check failed, or null if it passed
+   */
+  private static String check(BuildMode mode, int width, int height, double[] sites,
+                              long sampleSeed) {
+    //Shrinking can leave a set the mode no longer promises
+    if (!mode.accepts(width, height, sites)) return null;
+    double[] edges;
+    try {
+      edges = mode.build(width, height, sites);
+    } catch (RuntimeException e) {
+      return "build threw " + e;
+    }
+    double tol = RELATIVE_TOLERANCE * (width + height) + mode.tolerance(width, height);
+    double[] nearest = new double[2];
+
+    for (int i = 0; i < edges.length; i += 4) {
+      for (int k = 0; k < 4; k += 2) {
+        double x = edges[i + k];
+        double y = edges[i + k + 1];
+        if (!(x >= -tol && x <= width + tol && y >= -tol && y <= height + tol)) {
+          return "edge " + i / 4 + " ends outside the diagram at " + x + ", " + y;
+        }
+      }
+      double mx = (edges[i] + edges[i + 2]) / 2;
+      double my = (edges[i + 1] + edges[i + 3]) / 2;
+      nearestTwo(sites, mx, my, nearest);
+      if (nearest[1] - nearest[0] > tol) {
+        return "midpoint of edge " + i / 4 + " at " + mx + ", " + my
+                + " is not on a bisector of its nearest sites";
+      }
+    }
+
+    SplittableRandom rand = new SplittableRandom(sampleSeed);
+    double reach = (width + height) / 20.0;
+    for (int s = 0; s < SAMPLES; s++) {
+      double px = rand.nextDouble() * width;
+      double py = rand.nextDouble() * height;
+      double qx = Math.max(0, Math.min(width, px + (rand.nextDouble() - 0.5) * reach));
+      double qy = Math.max(0, Math.min(height, py + (rand.nextDouble() - 0.5) * reach));
+      //Points almost on an edge cannot be placed reliably, so skip them
+      int cellP = nearestSite(sites, px, py, tol, nearest);
+      int cellQ = nearestSite(sites, qx, qy, tol, nearest);
+      if (cellP < 0 || cellQ < 0) continue;
+      int crossings = crossings(edges, px, py, qx, qy);
+      if (cellP == cellQ && crossings > 0) {
+        return "segment " + px + ", " + py + " to " + qx + ", " + qy + " stays in the cell of site "
+                + cellP + " but crosses " + crossings + " edges";
+      }
+      if (cellP != cellQ && crossings == 0) {
+        return "segment " + px + ", " + py + " to " + qx + ", " + qy
+                + " goes from the cell of site " + cellP + " to that of site " + cellQ
+                + " without crossing an edge";
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Builds a site set as a snapshot, clipped to the box and then to a region inside it, and
+   * checks its cell metrics
+   * @return why the check failed, or null if it passed
+   */
+  private static String checkCells(int width, int height, double[] sites) {
+    //A diamond touching the middle of each side of the box
+    double[] corners = {width / 2.0, 0, width, height / 2.0, width / 2.0, height, 0, height / 2.0};
+    ConvexRegion[] regions = {null, new ConvexRegion(corners)};
+    for (ConvexRegion region : regions) {
+      String where = region == null ? "box" : "region";
+      DiagramSnapshot diagram;
+      CellMetrics cells;
+      try {
+        diagram = new Voronoi(width, height, SiteGenerator.toPoints(sites), region).snapshot();
+        cells = diagram.cellMetrics();
+      } catch (RuntimeException e) {
+        return "cell metrics in the " + where + " threw " + e;
+      }
+      double expected = region == null ? (double) width * height : (double) width * height / 2;
+      double total = 0;
+      for (int i = 0; i < sites.length / 2; i++) {
+        if (!(cells.area[i] >= 0)) {
+          return "cell " + i + " in the " + where + " has area " + cells.area[i];
+        }
+        if (diagram.canonical(i) != i && (cells.area[i] != 0 || cells.neighborCount[i] != 0)) {
+          return "repeated site " + i + " in the " + where + " has a cell of its own";
+        }
+        total += cells.area[i];
+      }
+      if (Math.abs(total - expected) > RELATIVE_TOLERANCE * expected) {
+        return "cell areas in the " + where + " add up to " + total + " instead of " + expected;
+      }
+      String reason = checkExport(diagram, cells, where);
+      if (reason == null && region == null) reason = checkSiteAt(diagram, sites);
+      if (reason != null) return reason;
+    }
+    return null;
+  }
+
+  /**
+   * Exports the cells in every format and reads them back: each cell must be written once, under
+   * its canonical site, and the CSV polygons must have the measured areas
+   * @return why the check failed, or null if it passed
+   */
+  private static String checkExport(DiagramSnapshot diagram, CellMetrics cells, String where) {
+    int expected = 0;
+    for (int i = 0; i < diagram.sites.size(); i++) {
+      if (CellMetrics.cell(diagram, i).length > 0) expected++;
+    }
+    for (DiagramExporter.Format format : DiagramExporter.Format.values()) {
+      String text = export(diagram, format);
+      if (format != DiagramExporter.Format.CSV) {
+        String marker = format == DiagramExporter.Format.SVG ? "<polygon" : "\"site\":";
+        int written = text.split(marker, -1).length - 1;
+        if (written != expected) {
+          return format + " export in the " + where + " has " + written + " cells instead of "
+                  + expected;
+        }
+        continue;
+      }
+      //Rows are grouped by site, so each site's rows must come in one run
+      String[] rows = text.split("\n");
+      double[] poly = new double[2 * rows.length];
+      int site = -1;
+      int vertices = 0;
+      int written = 0;
+      for (int r = 1; r <= rows.length; r++) {
+        String[] fields = r < rows.length ? rows[r].split(",") : new String[]{"-1", "0", "0", "0"};
+        int next = Integer.parseInt(fields[0]);
+        if (next != site && site >= 0) {
+          String reason = checkExportedCell(diagram, cells, where, site, poly, vertices);
+          if (reason != null) return reason;
+          written++;
+          vertices = 0;
+        }
+        if (next >= 0 && next < site) {
+          return "CSV export in the " + where + " writes site " + next + " twice";
+        }
+        site = next;
+        poly[2 * vertices] = Double.parseDouble(fields[2]);
+        poly[2 * vertices++ + 1] = Double.parseDouble(fields[3]);
+      }
+      if (written != expected) {
+        return "CSV export in the " + where + " has " + written + " cells instead of " + expected;
+      }
+    }
+    return null;
+  }
+
+  private static String checkExportedCell(DiagramSnapshot diagram, CellMetrics cells, String where,
+                                          int site, double[] poly, int vertices) {
+    if (diagram.canonical(site) != site) {
+      return "CSV export in the " + where + " writes repeated site " + site;
+    }
+    double twiceArea = 0;
+    for (int k = 0; k < vertices; k++) {
+      int a = 2 * k;
+      int b = 2 * ((k + 1) % vertices);
+      twiceArea += poly[a] * poly[b + 1] - poly[b] * poly[a + 1];
+    }
+    //Rounding the exported vertices moves the area by about the perimeter times the rounding
+    double scale = RELATIVE_TOLERANCE * (diagram.width + diagram.height);
+    double tol = scale * (1 + cells.perimeter[site]);
+    if (Math.abs(Math.abs(twiceArea) / 2 - cells.area[site]) > tol) {
+      return "CSV export in the " + where + " gives site " + site + " area "
+              + Math.abs(twiceArea) / 2 + " instead of " + cells.area[site];
+    }
+    return null;
+  }
+
+  /**
+   * Exports the cells of a diagram to a string
+   */
+  private static String export(DiagramSnapshot diagram, DiagramExporter.Format format) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      DiagramExporter.writeCells(diagram, format, Channels.newChannel(bytes), 9);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Checks that looking up the cell under sampled points gives a nearest site, and the first of
+   * any sites at its position
+   * @return why the check failed, or null if it passed
+   */
+  private static String checkSiteAt(DiagramSnapshot diagram, double[] sites) {
+    SplittableRandom rand = new SplittableRandom(sites.length);
+    double tol = RELATIVE_TOLERANCE * (diagram.width + diagram.height);
+    double[] nearest = new double[2];
+    for (int s = 0; s < SAMPLES; s++) {
+      double x = rand.nextDouble() * diagram.width;
+      double y = rand.nextDouble() * diagram.height;
+      //Half of the samples land right on a site, where its copies compete for the cell
+      if (s % 2 == 1) {
+        int i = rand.nextInt(sites.length / 2);
+        x = sites[2 * i];
+        y = sites[2 * i + 1];
+      }
+      int at = diagram.siteAt(x, y);
+      nearestTwo(sites, x, y, nearest);
+      if (at < 0 || Math.hypot(sites[2 * at] - x, sites[2 * at + 1] - y) - nearest[0] > tol) {
+        return "site lookup at " + x + ", " + y + " gave site " + at + ", which is not nearest";
+      }
+      if (diagram.canonical(at) != at) {
+        return "site lookup at " + x + ", " + y + " gave repeated site " + at + " instead of "
+                + diagram.canonical(at);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compares the predicates with an exact oracle on quadruples of sites. A quarter of the points
+   * are nudged by up to two ulps per coordinate, so quadruples that are exactly collinear or
+   * cocircular in the site set are tested both as they are and just off.
+   * @return why the check failed, or null if it passed
+   */
+  private static String checkPredicates(int width, int height, double[] sites) {
+    SplittableRandom rand = new SplittableRandom(sites.length);
+    Point[] q = new Point[4];
+    for (int s = 0; s < SAMPLES; s++) {
+      for (int k = 0; k < 4; k++) {
+        int i = rand.nextInt(sites.length / 2);
+        boolean nudged = rand.nextInt(4) == 0;
+        q[k] = new Point(nudged ? nudge(sites[2 * i], rand) : sites[2 * i],
+                nudged ? nudge(sites[2 * i + 1], rand) : sites[2 * i + 1]);
+      }
+      int orient = exactOrient(q[0], q[1], q[2]);
+      if (Predicates.orient(q[0], q[1], q[2]) != orient) {
+        return "orient of " + describe(q, 3) + " is not " + Predicates.orient(q[0], q[1], q[2]);
+      }
+      //The oracle needs a circle, which collinear points do not have
+      if (orient == 0) continue;
+      int inCircle = exactInCircle(q[0], q[1], q[2], q[3]);
+      if (Predicates.inCircle(q[0], q[1], q[2], q[3]) != inCircle) {
+        return "inCircle of " + describe(q, 4) + " is not "
+                + Predicates.inCircle(q[0], q[1], q[2], q[3]);
+      }
+    }
+    return null;
+  }
+
+  private static double nudge(double v, SplittableRandom rand) {
+    int steps = rand.nextInt(5) - 2;
+    for (int k = 0; k < Math.abs(steps); k++) {
+      v = steps > 0 ? Math.nextUp(v) : Math.nextDown(v);
+    }
+    return v;
+  }
+
+  private static String describe(Point[] points, int count) {
+    StringBuilder s = new StringBuilder();
+    for (int k = 0; k < count; k++) {
+      s.append(k == 0 ? "(" : ", (").append(points[k].x).append(", ").append(points[k].y)
+              .append(')');
+    }
+    return s.toString();
+  }
+
+  private static int exactOrient(Point a, Point b, Point c) {
+    BigDecimal bx = new BigDecimal(b.x).subtract(new BigDecimal(a.x));
+    BigDecimal by = new BigDecimal(b.y).subtract(new BigDecimal(a.y));
+    BigDecimal cx = new BigDecimal(c.x).subtract(new BigDecimal(a.x));
+    BigDecimal cy = new BigDecimal(c.y).subtract(new BigDecimal(a.y));
+    return bx.multiply(cy).subtract(by.multiply(cx)).signum();
+  }
+
+  /**
+   * The in-circle sign from the exact circumcenter rather than the lifted determinant. With b, c
+   * and d taken relative to a and D = 2 (b x c), the center is N / D, and d is inside the circle
+   * when D |d|^2 - 2 N . d has the opposite sign to D. D has the sign of the orientation, so the
+   * predicate's sign is that of 2 N . d - D |d|^2.
+   */
+  private static int exactInCircle(Point a, Point b, Point c, Point d) {
+    BigDecimal ax = new BigDecimal(a.x);
+    BigDecimal ay = new BigDecimal(a.y);
+    BigDecimal bx = new BigDecimal(b.x).subtract(ax);
+    BigDecimal by = new BigDecimal(b.y).subtract(ay);
+    BigDecimal cx = new BigDecimal(c.x).subtract(ax);
+    BigDecimal cy = new BigDecimal(c.y).subtract(ay);
+    BigDecimal dx = new BigDecimal(d.x).subtract(ax);
+    BigDecimal dy = new BigDecimal(d.y).subtract(ay);
+    BigDecimal b2 = bx.multiply(bx).add(by.multiply(by));
+    BigDecimal c2 = cx.multiply(cx).add(cy.multiply(cy));
+    BigDecimal d2 = dx.multiply(dx).add(dy.multiply(dy));
+    BigDecimal twoD = bx.multiply(cy).subtract(by.multiply(cx)).multiply(BigDecimal.valueOf(2));
+    BigDecimal nx = cy.multiply(b2).subtract(by.multiply(c2));
+    BigDecimal ny = bx.multiply(c2).subtract(cx.multiply(b2));
+    BigDecimal twoNd = nx.multiply(dx).add(ny.multiply(dy)).multiply(BigDecimal.valueOf(2));
+    return twoNd.subtract(twoD.multiply(d2)).signum();
+  }
+
+  /**
+   * Finds the distances from a point to its nearest and second-nearest sites. Repeated sites
+   * count once.
+   */
+  private static void nearestTwo(double[] sites, double x, double y, double[] result) {
+    nearestSite(sites, x, y, 0, result);
+  }
+
+  /**
+   * Finds the site nearest to a point, storing the nearest and second-nearest distances
+   * @return the index of the nearest site, or -1 if the second-nearest is within tol of it
+   */
+  private static int nearestSite(double[] sites, double x, double y, double tol,
+                                 double[] result) {
+    int best = -1;
+    double first = Double.POSITIVE_INFINITY;
+    double second = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < sites.length; i += 2) {
+      if (best >= 0 && sites[i] == sites[2 * best] && sites[i + 1] == sites[2 * best + 1]) {
+        continue;
+      }
+      double d = Math.hypot(sites[i] - x, sites[i + 1] - y);
+      if (d < first) {
+        second = first;
+        first = d;
+        best = i / 2;
+      } else if (d < second) {
+        second = d;
+      }
+    }
+    result[0] = first;
+    result[1] = second;
+    return second - first <= tol ? -1 : best;
+  }
+
+  /**
+   * Counts the edges a segment touches or crosses
+   */
+  private static int crossings(double[] edges, double px, double py, double qx, double qy) {
+    int count = 0;
+    for (int i = 0; i < edges.length; i += 4) {
+      if (intersects(px, py, qx, qy, edges[i], edges[i + 1], edges[i + 2], edges[i + 3])) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static boolean intersects(double ax, double ay, double bx, double by,
+                                    double cx, double cy, double dx, double dy) {
+    double d1 = cross(cx, cy, dx, dy, ax, ay);
+    double d2 = cross(cx, cy, dx, dy, bx, by);
+    double d3 = cross(ax, ay, bx, by, cx, cy);
+    double d4 = cross(ax, ay, bx, by, dx, dy);
+    if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+      return true;
+    }
+    return (d1 == 0 && onSegment(cx, cy, dx, dy, ax, ay))
+            || (d2 == 0 && onSegment(cx, cy, dx, dy, bx, by))
+            || (d3 == 0 && onSegment(ax, ay, bx, by, cx, cy))
+            || (d4 == 0 && onSegment(ax, ay, bx, by, dx, dy));
+  }
+
+  private static double cross(double ax, double ay, double bx, double by, double cx, double cy) {
+    return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+  }
+
+  private static boolean onSegment(double ax, double ay, double bx, double by,
+                                   double px, double py) {
+    return Math.min(ax, bx) <= px && px <= Math.max(ax, bx)
+            && Math.min(ay, by) <= py && py <= Math.max(ay, by);
+  }
+
+  //******************************SHRINKING***************************************//
+
+  /**
+   * Removes runs of sites, halving the run length whenever no run can go, for as long as the
+   * check keeps failing
+   * @return the smallest failing site set found
+   */
+  private static double[] shrink(Check check, int width, int height, double[] sites) {
+    int run = Math.max(1, sites.length / 4);
+    while (true) {
+      boolean removed = false;
+      for (int from = 0; from < sites.length / 2 && sites.length > 2; ) {
+        int to = Math.min(sites.length / 2, from + run);
+        double[] candidate = new double[sites.length - 2 * (to - from)];
+        System.arraycopy(sites, 0, candidate, 0, 2 * from);
+        System.arraycopy(sites, 2 * to, candidate, 2 * from, sites.length - 2 * to);
+        if (candidate.length > 0 && check.run(width, height, candidate) != null) {
+          sites = candidate;
+          removed = true;
+        } else {
+          from = to;
+        }
+      }
+      if (!removed) {
+        if (run == 1) return sites;
+        run = Math.max(1, run / 2);
+      }
+    }
+  }
+
+  //******************************HELPERS***************************************//
+
+  /**
+   * The halo of the tiled mode: a few mean site spacings
+   */
+  private static double halo(int width, int height, double[] coords) {
+    return HALO_SPACINGS * Math.sqrt((double) width * height / Math.max(1, coords.length / 2));
+  }
+
+  /**
+   * Finds the radius of the largest circle centered in the diagram with no site inside. It is
+   * centered on a vertex, on the border where an edge leaves the diagram or on a corner.
+   */
+  private static double largestEmptyCircle(int width, int height, double[] coords) {
+    DiagramSnapshot diagram = new Voronoi(width, height, SiteGenerator.toPoints(coords))
+            .snapshot();
+    double[] nearest = new double[2];
+    double[] corners = {0, 0, width, 0, width, height, 0, height};
+    double largest = 0;
+    for (int k = 0; k < corners.length; k += 2) {
+      nearestTwo(coords, corners[k], corners[k + 1], nearest);
+      largest = Math.max(largest, nearest[0]);
+    }
+    for (Edge e : diagram.edges) {
+      nearestTwo(coords, e.start.x, e.start.y, nearest);
+      largest = Math.max(largest, nearest[0]);
+      nearestTwo(coords, e.end.x, e.end.y, nearest);
+      largest = Math.max(largest, nearest[0]);
+    }
+    return largest;
+  }
+
+  private static double[] pack(DiagramSnapshot diagram) {
+    double[] packed = new double[4 * diagram.edges.size()];
+    int k = 0;
+    for (Edge e : diagram.edges) {
+      packed[k++] = e.start.x;
+      packed[k++] = e.start.y;
+      packed[k++] = e.end.x;
+      packed[k++] = e.end.y;
+    }
+    return packed;
+  }
+
+  /**
+   * Builds through the tiled builder in a temporary directory and reads the tiles back
+   */
+  private static double[] buildTiled(int width, int height, double[] coords, int tilesX,
+                                     int tilesY, double halo) {
+    try {
+      Path dir = Files.createTempDirectory("harness");
+      try {
+        Path sites = dir.resolve("sites.bin");
+        ByteBuffer buffer = ByteBuffer.allocate(8 * coords.length).order(ByteOrder.BIG_ENDIAN);
+        buffer.asDoubleBuffer().put(coords);
+        Files.write(sites, buffer.array());
+        List<Path> tiles = new TiledBuilder(width, height, tilesX, tilesY, halo, 1, false)
+                .build(sites, dir.resolve("tiles"));
+
+        double[] edges = new double[0];
+        for (Path tile : tiles) {
+          try (FileChannel channel = FileChannel.open(tile, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = data.getInt();
+            int at = edges.length;
+            edges = Arrays.copyOf(edges, at + 4 * count);
+            data.asDoubleBuffer().get(edges, at, 4 * count);
+          }
+          Files.delete(tile);
+        }
+        Files.delete(dir.resolve("tiles"));
+        Files.delete(sites);
+        return edges;
+      } finally {
+        Files.deleteIfExists(dir);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  //******************************COMMAND LINE***************************************//
+
+  public static void main(String[] args) {
+    int trials;
+    long seed;
+    int maxSites;
+    try {
+      trials = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+      seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+      maxSites = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+    } catch (NumberFormatException e) {
+      System.out.println("Usage:\n" +
+              "\t [Trials [Seed [MaxSites]]] \n");
+      return;
+    }
+    System.out.println("Seed: " + seed);
+    long start = System.nanoTime();
+    DifferentialHarness harness = new DifferentialHarness(defaultModes(), maxSites);
+    Failure failure = harness.run(trials, seed);
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    if (failure != null) {
+      System.out.println(failure);
+      System.exit(1);
+    }
+    System.out.println(trials + " trials passed in " + millis + " ms");
+    printCoverage(harness, trials);
+  }
+
+  /**
+   * Prints the number of trials each mode was checked on
+   */
+  static void printCoverage(DifferentialHarness harness, int trials) {
+    int[] counts = harness.checkedTrials();
+    for (int m = 0; m < counts.length; m++) {
+      System.out.println("\t " + harness.modes().get(m).name() + ": " + counts[m] + " of "
+              + trials + " trials");
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package view;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Represents a Flight Recorder event spanning one paint of the diagram component
+ */
+@Name("voronoi.Paint")
+@Label("Diagram Paint")
+@Category({"Voronoi", "View"})
+@Description("One paint of the Voronoi diagram component")
+class PaintEvent extends Event {
+  @Label("Edges Drawn")
+  int edgesDrawn;
+
+  @Label("Sites Drawn")
+  int sitesDrawn;
+
+  @Label("Version")
+  long version;
+}
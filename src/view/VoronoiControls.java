@@ -6,10 +6,16 @@ import java.awt.event.ActionListener;
 import javax.swing.*;
 import javax.swing.text.NumberFormatter;
 
+import voronoidiagram.DiagramSnapshot;
+import voronoidiagram.Point;
+
 /**
  * Represents a simple control panel for generating Voronoi diagrams
  */
 public class VoronoiControls extends JPanel {
+  //Describes the site under the cursor
+  private final JLabel siteInfo = new JLabel(" ");
+
   public VoronoiControls(ActionListener al) {
     this.setLayout(new FlowLayout());
 
@@ -24,5 +30,22 @@ public class VoronoiControls extends JPanel {
     delSiteButton.addActionListener(al);
     delSiteButton.setActionCommand("del_site_button");
     this.add(delSiteButton);
+
+    this.add(siteInfo);
+  }
+
+  /**
+   * Shows the details of a site, or clears them
+   * @param diagram the snapshot the site belongs to
+   * @param site the index of the site, or -1 to clear
+   */
+  public void showSite(DiagramSnapshot diagram, int site) {
+    if (site < 0) {
+      siteInfo.setText(" ");
+      return;
+    }
+    Point p = diagram.sites.get(site);
+    siteInfo.setText("Site " + site + " at (" + Math.round(p.x) + ", " + Math.round(p.y)
+            + "), " + diagram.neighborCount(site) + " neighbors");
   }
 }
@@ -4,6 +4,8 @@ import java.awt.*;
 
 import javax.swing.*;
 
+import voronoidiagram.CellMetrics;
+import voronoidiagram.DiagramSnapshot;
 import voronoidiagram.Edge;
 import voronoidiagram.Point;
 import voronoidiagram.Voronoi;
@@ -12,7 +14,12 @@ import voronoidiagram.Voronoi;
  * Represents a simple way to view the Voronoi diagram
  */
 public class VoronoiDrawer extends JComponent {
+  private static final Color HIGHLIGHT = new Color(255, 230, 140);
   private Voronoi voronoi;
+  //The highlighted cell, the site it belongs to and the snapshot it was found in
+  private Polygon hoverCell;
+  private int hoverSite = -1;
+  private DiagramSnapshot hoverDiagram;
 
   /**
    * Creates a new Voronoi drawer based on the given Voronoi diagram
@@ -29,11 +36,20 @@ public class VoronoiDrawer extends JComponent {
    * @param g the graphics used to draw
    */
   public void paintComponent(Graphics g) {
+    PaintEvent event = new PaintEvent();
+    event.begin();
     super.paintComponent(g);
     g.setColor(Color.white);
     g.fillRect(0, 0, getWidth(), getHeight());
+    //Draw from a single snapshot so the sites and edges always belong to the same build
+    DiagramSnapshot diagram = voronoi.snapshot();
+    //A highlight found in an older build no longer matches the cells
+    if (hoverCell != null && hoverDiagram == diagram) {
+      g.setColor(HIGHLIGHT);
+      g.fillPolygon(hoverCell);
+    }
     g.setColor(Color.black);
-    for (Edge edge : voronoi.edges) {
+    for (Edge edge : diagram.edges) {
       g.drawLine(
               (int) edge.start.x,
               (int) edge.start.y,
@@ -41,7 +57,7 @@ public class VoronoiDrawer extends JComponent {
               (int) edge.end.y
       );
     }
-    for (Point point : voronoi.sites) {
+    for (Point point : diagram.sites) {
       g.drawOval(
               (int) point.x,
               (int) point.y,
@@ -49,7 +65,67 @@ public class VoronoiDrawer extends JComponent {
               2
       );
     }
+    event.end();
+    if (event.shouldCommit()) {
+      event.edgesDrawn = diagram.edges.size();
+      event.sitesDrawn = diagram.sites.size();
+      event.version = diagram.version;
+      event.commit();
+    }
+  }
+
+  /**
+   * Highlights the cell under a point. Only the old and new cells are repainted, so this is cheap
+   * enough to call on every mouse move.
+   * @param x the x coordinate of the point
+   * @param y the y coordinate of the point
+   * @return the snapshot the cell was found in and the index of its site, or -1 if there is none
+   */
+  public int hover(int x, int y) {
+    DiagramSnapshot diagram = voronoi.snapshot();
+    int site = diagram.siteAt(x, y);
+    if (site == hoverSite && diagram == hoverDiagram) return site;
+    repaintHover();
+    hoverDiagram = diagram;
+    hoverSite = site;
+    hoverCell = site < 0 ? null : toPolygon(CellMetrics.cell(diagram, site));
+    repaintHover();
+    return site;
+  }
+
+  /**
+   * Removes the highlight
+   */
+  public void clearHover() {
+    repaintHover();
+    hoverCell = null;
+    hoverSite = -1;
+    hoverDiagram = null;
+  }
+
+  /**
+   * The snapshot the highlighted cell was found in, or null if nothing is highlighted
+   */
+  public DiagramSnapshot hoverDiagram() {
+    return hoverDiagram;
+  }
 
+  /**
+   * Repaints the area of the highlighted cell, plus a pixel for the edges around it
+   */
+  private void repaintHover() {
+    if (hoverCell == null) return;
+    Rectangle bounds = hoverCell.getBounds();
+    bounds.grow(1, 1);
+    repaint(bounds);
+  }
+
+  private static Polygon toPolygon(double[] cell) {
+    Polygon polygon = new Polygon();
+    for (int i = 0; i < cell.length; i += 2) {
+      polygon.addPoint((int) cell[i], (int) cell[i + 1]);
+    }
+    return polygon;
   }
 
 }
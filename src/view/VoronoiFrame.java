@@ -31,8 +31,27 @@ public class VoronoiFrame extends JFrame {
     this.add(controlPanel, BorderLayout.NORTH);
     this.add(diagramComponent, BorderLayout.CENTER);
     this.diagramComponent.addMouseListener(al);
+    this.diagramComponent.addMouseMotionListener(al);
     this.setVisible(true);
     this.pack();
   }
 
+  /**
+   * Highlights the cell under a point of the diagram and shows its site's details
+   * @param x the x coordinate of the point
+   * @param y the y coordinate of the point
+   */
+  public void hover(int x, int y) {
+    int site = diagramComponent.hover(x, y);
+    controlPanel.showSite(diagramComponent.hoverDiagram(), site);
+  }
+
+  /**
+   * Removes the highlight and the site details
+   */
+  public void clearHover() {
+    diagramComponent.clearHover();
+    controlPanel.showSite(null, -1);
+  }
+
 }
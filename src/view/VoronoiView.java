@@ -29,4 +29,12 @@ public class VoronoiView {
     this.frame.repaint();
   }
 
+  public void hover(int x, int y) {
+    this.frame.hover(x, y);
+  }
+
+  public void clearHover() {
+    this.frame.clearHover();
+  }
+
 }
@@ -11,6 +11,19 @@ class Arc {
   Arc parent;
   Arc leftChild;
   Arc rightChild;
+  //For an edge, the closest arcs on the beachline to either side of it
+  Arc leftArc;
+  Arc rightArc;
+  //For an edge, the offsets from the left focus to the right one and the square of their
+  //distance, which its breakpoint needs at every sweepline
+  double gapX;
+  double gapY;
+  double gapSq;
+  //For an edge, the x of its breakpoint and the sweepline it was found at
+  double breakpoint;
+  double breakpointSweep = Double.NaN;
+  //For an edge started at a circle event, the site whose arc vanished there
+  Point vanished;
   //Whether the Arc is on the beach or not
   boolean onBeach;
 
@@ -50,6 +63,39 @@ class Arc {
     a.parent = this;
   }
 
+  /**
+   * Sets the closest arcs on the beachline to either side of this edge, dropping any cached
+   * breakpoint
+   * @param left the arc to the left
+   * @param right the arc to the right
+   */
+  void setBounds(Arc left, Arc right) {
+    this.leftArc = left;
+    this.rightArc = right;
+    if (left != null && right != null) {
+      this.gapX = right.focus.x - left.focus.x;
+      this.gapY = right.focus.y - left.focus.y;
+      this.gapSq = gapX * gapX + gapY * gapY;
+    }
+    this.breakpointSweep = Double.NaN;
+  }
+
+  /**
+   * Sets the closest arc on the beachline to the left of this edge
+   * @param left the arc
+   */
+  void setLeftArc(Arc left) {
+    this.setBounds(left, this.rightArc);
+  }
+
+  /**
+   * Sets the closest arc on the beachline to the right of this edge
+   * @param right the arc
+   */
+  void setRightArc(Arc right) {
+    this.setBounds(this.leftArc, right);
+  }
+
   /**
    * Adds an edge to this arc and removes it from the beachline
    * @param edge the edge to be added
@@ -88,26 +134,20 @@ class Arc {
   }
 
   /**
-   * Finds the closest left child on the beachline
+   * Finds the closest left child on the beachline. Kept up to date by the sweep, so no walk down
+   * the tree is needed.
    * @return the child
    */
   Arc getLeftChild() {
-    Arc child = this.leftChild;
-    while (child != null && !child.onBeach){
-      child = child.rightChild;
-    }
-    return child;
+    return this.leftArc;
   }
 
   /**
-   * Finds the closest right child on the beachline
+   * Finds the closest right child on the beachline. Kept up to date by the sweep, so no walk down
+   * the tree is needed.
    * @return the child
    */
   Arc getRightChild() {
-    Arc child = this.rightChild;
-    while (child != null && !child.onBeach){
-      child = child.leftChild;
-    }
-    return child;
+    return this.rightArc;
   }
 }
@@ -0,0 +1,28 @@
+package voronoidiagram;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Represents a Flight Recorder event spanning one build of a diagram
+ */
+@Name("voronoi.Build")
+@Label("Diagram Build")
+@Category({"Voronoi", "Diagram"})
+@Description("One run of Fortune's Algorithm over a set of sites")
+class BuildEvent extends Event {
+  @Label("Build Mode")
+  String mode;
+
+  @Label("Site Count")
+  int siteCount;
+
+  @Label("Edge Count")
+  int edgeCount;
+
+  @Label("Version")
+  long version;
+}
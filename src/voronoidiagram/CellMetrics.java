@@ -0,0 +1,153 @@
+package voronoidiagram;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Represents the area, centroid, perimeter and neighbor count of every cell of a diagram, stored
+ * in arrays indexed like the snapshot's sites. Cells are clipped to the width x height box, or to
+ * the snapshot's clip region, so cells on the border are measured as drawn.
+ *
+ * Each cell is rebuilt on its own as the box cut down by the bisector with each of its neighbors
+ * from the snapshot's topology, then by the sides of the clip region. This gives the exact clipped
+ * cell even where the sweep split an edge into several pieces, or where a cell only touches the
+ * region, and lets all cells be measured in parallel.
+ */
+public final class CellMetrics {
+  public final double[] area;
+  public final double[] centroidX;
+  public final double[] centroidY;
+  public final double[] perimeter;
+  public final int[] neighborCount;
+
+  private CellMetrics(int sites) {
+    this.area = new double[sites];
+    this.centroidX = new double[sites];
+    this.centroidY = new double[sites];
+    this.perimeter = new double[sites];
+    this.neighborCount = new int[sites];
+  }
+
+  /**
+   * Measures every cell of a diagram
+   * @param diagram the diagram
+   * @return the metrics of its cells
+   */
+  public static CellMetrics compute(DiagramSnapshot diagram) {
+    int n = diagram.sites.size();
+    CellMetrics metrics = new CellMetrics(n);
+    IntStream range = IntStream.range(0, n);
+    //Small diagrams are not worth handing to other threads
+    if (n >= 1024) range = range.parallel();
+    range.forEach(i -> metrics.measure(diagram, i));
+    return metrics;
+  }
+
+  /**
+   * Finds the polygon of one cell, clipped to the diagram box or clip region
+   * @param diagram the diagram
+   * @param site the index of the site
+   * @return the vertices in order as x0, y0, x1, y1, ...; empty if the cell is empty
+   */
+  public static double[] cell(DiagramSnapshot diagram, int site) {
+    //A repeated site's cell is measured once, under the first site at its position
+    if (diagram.canonical(site) != site) return new double[0];
+    //The neighbors in the whole box, since a cell can be bounded by an edge outside the region
+    int[] neighbors = diagram.boxNeighbors(site);
+    double[] region = diagram.region == null ? new double[0] : diagram.region.vertices();
+    Point s = diagram.sites.get(site);
+
+    //Each cut adds at most one vertex
+    int capacity = 8 + 2 * neighbors.length + region.length;
+    double[] poly = Arrays.copyOf(
+            new double[]{0, 0, diagram.width, 0, diagram.width, diagram.height, 0, diagram.height},
+            capacity);
+    double[] next = new double[capacity];
+    int count = 4;
+
+    //Start from the box and keep the side of each bisector closer to the site
+    for (int j : neighbors) {
+      Point o = diagram.sites.get(j);
+      //Points p with (p - mid) . (o - s) <= 0 are at least as close to s as to o
+      double nx = o.x - s.x;
+      double ny = o.y - s.y;
+      count = cut(poly, count, next, nx, ny, nx * (o.x + s.x) / 2 + ny * (o.y + s.y) / 2);
+      double[] swap = poly;
+      poly = next;
+      next = swap;
+    }
+    //Then keep the inner side of each side of the region, which turns the same way as the box
+    for (int k = 0; k < region.length / 2 && count > 0; k++) {
+      int a = 2 * k;
+      int b = 2 * ((k + 1) % (region.length / 2));
+      double nx = region[b + 1] - region[a + 1];
+      double ny = region[a] - region[b];
+      count = cut(poly, count, next, nx, ny, nx * region[a] + ny * region[a + 1]);
+      double[] swap = poly;
+      poly = next;
+      next = swap;
+    }
+    return count == capacity / 2 ? poly : Arrays.copyOf(poly, 2 * count);
+  }
+
+  /**
+   * Cuts a convex polygon down to the points p with n . p <= c
+   * @param poly the polygon's vertices in order
+   * @param count the number of vertices
+   * @param out where the vertices of the cut polygon are written
+   * @return the number of vertices of the cut polygon
+   */
+  private static int cut(double[] poly, int count, double[] out, double nx, double ny, double c) {
+    int kept = 0;
+    for (int k = 0; k < count; k++) {
+      int a = 2 * k;
+      int b = 2 * ((k + 1) % count);
+      double d1 = nx * poly[a] + ny * poly[a + 1] - c;
+      double d2 = nx * poly[b] + ny * poly[b + 1] - c;
+      if (d1 <= 0) {
+        out[2 * kept] = poly[a];
+        out[2 * kept++ + 1] = poly[a + 1];
+      }
+      if ((d1 < 0 && d2 > 0) || (d1 > 0 && d2 < 0)) {
+        double t = d1 / (d1 - d2);
+        out[2 * kept] = poly[a] + t * (poly[b] - poly[a]);
+        out[2 * kept++ + 1] = poly[a + 1] + t * (poly[b + 1] - poly[a + 1]);
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Measures the cell of one site
+   */
+  private void measure(DiagramSnapshot diagram, int site) {
+    double[] poly = cell(diagram, site);
+    int count = poly.length / 2;
+
+    //Shoelace formula for the area and centroid
+    double twiceArea = 0;
+    double cx = 0;
+    double cy = 0;
+    double length = 0;
+    for (int k = 0; k < count; k++) {
+      int a = 2 * k;
+      int b = 2 * ((k + 1) % count);
+      double cross = poly[a] * poly[b + 1] - poly[b] * poly[a + 1];
+      twiceArea += cross;
+      cx += (poly[a] + poly[b]) * cross;
+      cy += (poly[a + 1] + poly[b + 1]) * cross;
+      length += Math.hypot(poly[b] - poly[a], poly[b + 1] - poly[a + 1]);
+    }
+    area[site] = Math.abs(twiceArea) / 2;
+    if (twiceArea != 0) {
+      centroidX[site] = cx / (3 * twiceArea);
+      centroidY[site] = cy / (3 * twiceArea);
+    } else {
+      Point s = diagram.sites.get(site);
+      centroidX[site] = s.x;
+      centroidY[site] = s.y;
+    }
+    perimeter[site] = length;
+    neighborCount[site] = diagram.neighborCount(site);
+  }
+}
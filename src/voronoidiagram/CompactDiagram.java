@@ -0,0 +1,184 @@
+package voronoidiagram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a finished diagram stored in single precision, for diagrams too large to keep as
+ * {@link DiagramSnapshot}s. Sites are stored as x, y floats, edges as x1, y1, x2, y2 floats and the
+ * two sites of each edge as indices, with no per-site or per-edge objects. This takes under a
+ * third of the memory of a snapshot and half that of the same arrays in doubles. That is the
+ * memory kept once the diagram is built; building one needs as much at its peak as a snapshot
+ * does, see {@link #build}.
+ *
+ * Bandwidth: the binary edge format written by {@link #writeEdges} is half the size of the double
+ * format. The text formats of the exporter, which can also be written straight from a compact
+ * diagram, round every coordinate to a fixed number of decimals whatever it is stored as, so their
+ * size is set by the decimals and is the same as for a snapshot.
+ *
+ * Repeated sites are kept, so the site arrays line up with the input, but like in a snapshot only
+ * the first site at a position owns a cell, and edges name their sites by that index.
+ *
+ * Precision: the sweep itself still runs in doubles with the exact predicates, so the topology,
+ * meaning which sites share an edge, is the same as in a full-precision build. Only the stored
+ * coordinates are rounded to the nearest float. A float has a 24-bit significand, so a coordinate
+ * below 2^17 (about 1.3 * 10^5) is within 2^-8, or 0.004, of the double it came from, well under
+ * a pixel. The error doubles with each further power of two, reaching 0.03 at 10^6. Vertices
+ * shared by several edges round the same way, so the edges still meet. Sites given as floats are
+ * stored exactly.
+ */
+public final class CompactDiagram {
+  //Bytes per edge in the binary format: four floats
+  private static final int EDGE_BYTES = 16;
+
+  //Dimensions
+  public final int width;
+  public final int height;
+  //The sites, x0, y0, x1, y1, ...
+  public final float[] sites;
+  //The edges, x1, y1, x2, y2 per edge
+  public final float[] edges;
+  //The left and right site of each edge, as site indices
+  public final int[] edgeSites;
+  //The sites that repeat an earlier site's position
+  private final BitSet repeated;
+
+  private CompactDiagram(int width, int height, float[] sites, float[] edges, int[] edgeSites,
+                         BitSet repeated) {
+    this.width = width;
+    this.height = height;
+    this.sites = sites;
+    this.edges = edges;
+    this.edgeSites = edgeSites;
+    this.repeated = repeated;
+  }
+
+  /**
+   * Builds a diagram straight into single precision, without creating a snapshot. This does not
+   * lower the peak memory of the build: the sweep runs on a full double-precision generator, with
+   * a point per site and an edge object per edge, and packing looks the sites up in a hash map.
+   * All of it is dropped once the arrays are filled, so only the result stays smaller.
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param coords the sites as x0, y0, x1, y1, ..., all within the diagram
+   * @return the diagram
+   * @throws IllegalArgumentException if a site is out of bounds
+   */
+  public static CompactDiagram build(int width, int height, float[] coords) {
+    ArrayList<Point> points = new ArrayList<>(coords.length / 2);
+    for (int i = 0; i + 1 < coords.length; i += 2) {
+      if (!Util.inRangeEx(0, coords[i], width) || !Util.inRangeEx(0, coords[i + 1], height)) {
+        throw new IllegalArgumentException("Site out of bounds: " + coords[i] + ", "
+                + coords[i + 1]);
+      }
+      points.add(new Point(coords[i], coords[i + 1]));
+    }
+    BuildEvent event = new BuildEvent();
+    event.begin();
+    Voronoi v = new Voronoi(width, height);
+    v.loadSites(points);
+    CompactDiagram diagram = pack(width, height, points, v.sweep());
+    event.end();
+    if (event.shouldCommit()) {
+      event.mode = "compact";
+      event.siteCount = points.size();
+      event.edgeCount = diagram.edges.length / 4;
+      event.commit();
+    }
+    return diagram;
+  }
+
+  /**
+   * Converts a snapshot to single precision
+   * @param diagram the snapshot
+   * @return the diagram
+   */
+  public static CompactDiagram of(DiagramSnapshot diagram) {
+    return pack(diagram.width, diagram.height, diagram.sites, diagram.edges);
+  }
+
+  private static CompactDiagram pack(int width, int height, List<Point> points,
+                                     List<Edge> edgeList) {
+    float[] sites = new float[2 * points.size()];
+    //Looked up by position, so every copy of a repeated site maps to the first of them
+    Map<Point, Integer> indices = new HashMap<>(points.size() * 2);
+    BitSet repeated = new BitSet(points.size());
+    for (int i = 0; i < points.size(); i++) {
+      sites[2 * i] = (float) points.get(i).x;
+      sites[2 * i + 1] = (float) points.get(i).y;
+      if (indices.putIfAbsent(points.get(i), i) != null) repeated.set(i);
+    }
+    float[] edges = new float[4 * edgeList.size()];
+    int[] edgeSites = new int[2 * edgeList.size()];
+    for (int i = 0; i < edgeList.size(); i++) {
+      Edge e = edgeList.get(i);
+      edges[4 * i] = (float) e.start.x;
+      edges[4 * i + 1] = (float) e.start.y;
+      edges[4 * i + 2] = (float) e.end.x;
+      edges[4 * i + 3] = (float) e.end.y;
+      edgeSites[2 * i] = indices.getOrDefault(e.leftSite, -1);
+      edgeSites[2 * i + 1] = indices.getOrDefault(e.rightSite, -1);
+    }
+    return new CompactDiagram(width, height, sites, edges, edgeSites, repeated);
+  }
+
+  public int siteCount() {
+    return sites.length / 2;
+  }
+
+  public int edgeCount() {
+    return edges.length / 4;
+  }
+
+  /**
+   * Checks whether a site repeats the position of an earlier site, and so has no cell of its own
+   * @param site the index of the site
+   * @return true if an earlier site has the same position
+   */
+  public boolean isRepeated(int site) {
+    return repeated.get(site);
+  }
+
+  /**
+   * Estimates the memory this diagram uses
+   * @return the estimate in bytes
+   */
+  public long bytes() {
+    return 64 + 4L * sites.length + 4L * edges.length + 4L * edgeSites.length
+            + repeated.size() / 8;
+  }
+
+  /**
+   * Writes the edges in the binary edge format of the diagram service with floats in place of
+   * doubles: int count, then x1, y1, x2, y2 per edge, big-endian. This is half the size of the
+   * double format.
+   * @param channel the channel to write to, which is left open
+   * @throws IOException if writing fails
+   */
+  public void writeEdges(WritableByteChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    buffer.putInt(edgeCount());
+    for (int i = 0; i < edges.length; i += 4) {
+      if (buffer.remaining() < EDGE_BYTES) drain(buffer, channel);
+      buffer.putFloat(edges[i]);
+      buffer.putFloat(edges[i + 1]);
+      buffer.putFloat(edges[i + 2]);
+      buffer.putFloat(edges[i + 3]);
+    }
+    drain(buffer, channel);
+  }
+
+  private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,139 @@
+package voronoidiagram;
+
+import java.util.Arrays;
+
+/**
+ * Represents a convex polygon a diagram is clipped to, such as a service area. The vertices are
+ * kept in the same turning direction as the diagram box (0, 0), (width, 0), (width, height),
+ * (0, height), whichever order they were given in.
+ *
+ * Edges are clipped with the Cyrus-Beck method, which is Liang-Barsky with one step per polygon
+ * side, so clipping costs one pass over the sides per edge.
+ */
+public final class ConvexRegion {
+  //The vertices, x0, y0, x1, y1, ...
+  private final double[] coords;
+
+  /**
+   * Creates a region from its vertices, in either turning direction
+   * @param coords the vertices as x0, y0, x1, y1, ...
+   * @throws IllegalArgumentException if there are fewer than three vertices, a coordinate is not
+   *                                  finite, or the polygon is not strictly convex
+   */
+  public ConvexRegion(double... coords) {
+    if (coords.length < 6 || coords.length % 2 != 0) {
+      throw new IllegalArgumentException("A region needs at least three vertices!");
+    }
+    for (double c : coords) {
+      if (Double.isNaN(c) || Double.isInfinite(c)) {
+        throw new IllegalArgumentException("Region coordinates must be finite!");
+      }
+    }
+    int n = coords.length / 2;
+    int turn = 0;
+    double turning = 0;
+    for (int i = 0; i < n; i++) {
+      int a = 2 * i;
+      int b = 2 * ((i + 1) % n);
+      int c = 2 * ((i + 2) % n);
+      int sign = Predicates.orient(coords[a], coords[a + 1], coords[b], coords[b + 1],
+              coords[c], coords[c + 1]);
+      if (sign == 0 || (turn != 0 && sign != turn)) {
+        throw new IllegalArgumentException("Region must be strictly convex!");
+      }
+      turn = sign;
+      turning += Math.abs(Math.atan2(
+              (coords[b] - coords[a]) * (coords[c + 1] - coords[b + 1])
+                      - (coords[b + 1] - coords[a + 1]) * (coords[c] - coords[b]),
+              (coords[b] - coords[a]) * (coords[c] - coords[b])
+                      + (coords[b + 1] - coords[a + 1]) * (coords[c + 1] - coords[b + 1])));
+    }
+    //Turning the same way at every vertex still allows a star; a convex polygon turns once
+    if (Math.abs(turning - 2 * Math.PI) > 1e-6) {
+      throw new IllegalArgumentException("Region must be strictly convex!");
+    }
+    this.coords = turn > 0 ? coords.clone() : reverse(coords);
+  }
+
+  /**
+   * The number of vertices
+   */
+  public int size() {
+    return coords.length / 2;
+  }
+
+  /**
+   * Returns the vertices in the same turning direction as the diagram box
+   * @return a copy of the vertices, x0, y0, x1, y1, ...
+   */
+  public double[] vertices() {
+    return coords.clone();
+  }
+
+  /**
+   * Checks whether a point lies inside the region or on its border
+   */
+  public boolean contains(double x, double y) {
+    int n = coords.length / 2;
+    for (int i = 0; i < n; i++) {
+      int a = 2 * i;
+      int b = 2 * ((i + 1) % n);
+      if (Predicates.orient(coords[a], coords[a + 1], coords[b], coords[b + 1], x, y) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether the region lies within the 0..width x 0..height box
+   */
+  boolean within(int width, int height) {
+    for (int i = 0; i < coords.length; i += 2) {
+      if (!Util.inRangeIn(0, coords[i], width) || !Util.inRangeIn(0, coords[i + 1], height)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Clips an edge to the region
+   * @param e the edge to clip
+   * @return the part of the edge inside the region, with its ends moved onto the region's border
+   *         if needed, or null if no part of it is inside
+   */
+  Edge clip(Edge e) {
+    double dx = e.end.x - e.start.x;
+    double dy = e.end.y - e.start.y;
+    //The portion of the edge that is kept, as fractions from start to end
+    double[] range = {0, 1};
+    int n = coords.length / 2;
+    for (int i = 0; i < n; i++) {
+      int a = 2 * i;
+      int b = 2 * ((i + 1) % n);
+      double sx = coords[b] - coords[a];
+      double sy = coords[b + 1] - coords[a + 1];
+      //Inside is where (side) x (point - vertex) is not negative
+      double p = -(sx * dy - sy * dx);
+      double q = sx * (e.start.y - coords[a + 1]) - sy * (e.start.x - coords[a]);
+      if (!Util.clipRange(p, q, range)) return null;
+    }
+    return e.portion(range);
+  }
+
+  private static double[] reverse(double[] coords) {
+    int n = coords.length / 2;
+    double[] reversed = new double[coords.length];
+    for (int i = 0; i < n; i++) {
+      reversed[2 * i] = coords[2 * (n - 1 - i)];
+      reversed[2 * i + 1] = coords[2 * (n - 1 - i) + 1];
+    }
+    return reversed;
+  }
+
+  @Override
+  public String toString() {
+    return "ConvexRegion" + Arrays.toString(coords);
+  }
+}
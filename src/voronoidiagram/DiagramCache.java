@@ -0,0 +1,258 @@
+package voronoidiagram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Represents a bounded cache of finished diagrams, so that building the same sites twice returns
+ * the first result instead of running the sweep again. Entries are found by a 64-bit fingerprint
+ * of the canonical sites (sorted in sweep order, without duplicates) and the diagram dimensions,
+ * then checked against the stored sites so a fingerprint collision can never return the wrong
+ * diagram. The least recently used entries are evicted once either the entry limit or the byte
+ * limit is passed.
+ *
+ * Snapshots built through the cache list their sites in canonical order, not in the order given.
+ */
+public class DiagramCache {
+  private final int maxEntries;
+  private final long maxBytes;
+  //Ordered from least to most recently used
+  private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates an empty cache
+   * @param maxEntries the most diagrams kept
+   * @param maxBytes the most memory, estimated, the kept diagrams may use
+   */
+  public DiagramCache(int maxEntries, long maxBytes) {
+    if (maxEntries < 1 || maxBytes < 1) {
+      throw new IllegalArgumentException("Cache limits must be positive!");
+    }
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Represents the lookup key of a site set: its canonical coordinates and their fingerprint
+   */
+  public static final class Key {
+    final int width;
+    final int height;
+    //x0, y0, x1, y1, ... in sweep order
+    final double[] coords;
+    final long fingerprint;
+
+    private Key(int width, int height, double[] coords, long fingerprint) {
+      this.width = width;
+      this.height = height;
+      this.coords = coords;
+      this.fingerprint = fingerprint;
+    }
+
+    boolean sameSites(Key other) {
+      return width == other.width && height == other.height
+              && Arrays.equals(coords, other.coords);
+    }
+  }
+
+  private static final class Entry {
+    final Key key;
+    final DiagramSnapshot diagram;
+    final long bytes;
+
+    Entry(Key key, DiagramSnapshot diagram, long bytes) {
+      this.key = key;
+      this.diagram = diagram;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Creates the lookup key of a site set
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param sites the sites, in any order and possibly repeated
+   * @return the key
+   */
+  public static Key key(int width, int height, List<Point> sites) {
+    Point[] sorted = sites.toArray(new Point[0]);
+    Arrays.sort(sorted);
+    double[] coords = new double[sorted.length * 2];
+    int n = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i > 0 && sorted[i].equals(sorted[i - 1])) continue;
+      //Adding 0.0 turns -0.0 into 0.0, so both hash the same
+      coords[n++] = sorted[i].x + 0.0;
+      coords[n++] = sorted[i].y + 0.0;
+    }
+    if (n < coords.length) coords = Arrays.copyOf(coords, n);
+
+    long hash = mix(((long) width << 32) ^ (height & 0xffffffffL));
+    for (double c : coords) {
+      hash = mix(hash ^ Double.doubleToLongBits(c));
+    }
+    return new Key(width, height, coords, hash);
+  }
+
+  /**
+   * Scrambles the bits of a 64-bit value (the SplitMix64 finalizer)
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  //******************************LOOKUP***************************************//
+
+  /**
+   * Finds a cached diagram
+   * @param key the key of the site set
+   * @return the diagram, or null if it is not cached
+   */
+  public synchronized DiagramSnapshot get(Key key) {
+    DiagramSnapshot diagram = peek(key);
+    if (diagram != null) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return diagram;
+  }
+
+  /**
+   * Finds a cached diagram without counting the lookup, such as to check again for a diagram
+   * another thread built while this one waited to build it
+   * @param key the key of the site set
+   * @return the diagram, or null if it is not cached
+   */
+  public synchronized DiagramSnapshot peek(Key key) {
+    Entry e = entries.get(key.fingerprint);
+    return e != null && e.key.sameSites(key) ? e.diagram : null;
+  }
+
+  /**
+   * Finds a cached diagram, building and caching it if it is not there. The sweep runs outside
+   * the cache's lock, so different site sets build concurrently.
+   * @param key the key of the site set
+   * @return the diagram
+   */
+  public DiagramSnapshot getOrBuild(Key key) {
+    DiagramSnapshot diagram = get(key);
+    if (diagram != null) return diagram;
+    return build(key);
+  }
+
+  /**
+   * Builds the diagram of a site set without looking it up first, then caches it
+   * @param key the key of the site set
+   * @return the diagram
+   */
+  public DiagramSnapshot build(Key key) {
+    ArrayList<Point> sites = new ArrayList<>(key.coords.length / 2);
+    for (int i = 0; i < key.coords.length; i += 2) {
+      sites.add(new Point(key.coords[i], key.coords[i + 1]));
+    }
+    DiagramSnapshot diagram = new Voronoi(key.width, key.height, sites).snapshot();
+    put(key, diagram);
+    return diagram;
+  }
+
+  /**
+   * Finds a cached diagram, building and caching it if it is not there
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param sites the sites
+   * @return the diagram
+   */
+  public DiagramSnapshot getOrBuild(int width, int height, List<Point> sites) {
+    return getOrBuild(key(width, height, sites));
+  }
+
+  /**
+   * Adds a diagram to the cache, evicting the least recently used ones if needed. A diagram
+   * larger than the whole cache is not kept.
+   * @param key the key of the site set
+   * @param diagram the diagram built from it
+   */
+  public synchronized void put(Key key, DiagramSnapshot diagram) {
+    long size = estimateBytes(key, diagram);
+    if (size > maxBytes) return;
+    Entry old = entries.put(key.fingerprint, new Entry(key, diagram, size));
+    if (old != null) bytes -= old.bytes;
+    bytes += size;
+
+    Iterator<Entry> oldest = entries.values().iterator();
+    while (entries.size() > maxEntries || bytes > maxBytes) {
+      Entry e = oldest.next();
+      oldest.remove();
+      bytes -= e.bytes;
+      evictions++;
+    }
+  }
+
+  /**
+   * Estimates the memory a cached diagram uses: its sites and edges, their points, and the key.
+   * What the diagram builds on first use is counted as if already built, since a cached diagram
+   * keeps it once any reader asks.
+   * @return the estimate in bytes
+   */
+  private static long estimateBytes(Key key, DiagramSnapshot diagram) {
+    //A Point is about 32 bytes and an Edge about 48, plus its two points and a list slot each
+    long sites = diagram.sites.size() * (32L + 8);
+    long edges = diagram.edges.size() * (48L + 64 + 8);
+    //Per site: the index by identity and the canonical mapping (about 52 bytes), the adjacency
+    //(about 28), the cell metrics (36) and the site grid (about 22)
+    long lazy = diagram.sites.size() * (52L + 28 + 36 + 22);
+    return 128 + sites + edges + lazy + key.coords.length * 8L;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  //******************************STATISTICS***************************************//
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * The fraction of lookups that found a diagram
+   * @return the hit rate, or 0 if there have been no lookups
+   */
+  public synchronized double getHitRate() {
+    long total = hits + misses;
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "entries=" + entries.size() + " bytes=" + bytes + " hits=" + hits
+            + " misses=" + misses + " evictions=" + evictions;
+  }
+}
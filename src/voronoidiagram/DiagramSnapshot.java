@@ -0,0 +1,256 @@
+package voronoidiagram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents one finished build of a Voronoi diagram. A snapshot never changes once it has been
+ * published, so any number of threads can read it without locking while the next one is built.
+ */
+public final class DiagramSnapshot {
+  //Dimensions
+  public final int width;
+  public final int height;
+  //Increases by one with every build of the owning diagram
+  public final long version;
+  //The sites and edges of this build, read-only
+  public final List<Point> sites;
+  public final List<Edge> edges;
+  //The edges clipped to the box only, or the edges themselves without a region
+  private final List<Edge> boxEdges;
+  //Looks up a site's index by identity, built the first time it is needed
+  private volatile Map<Point, Integer> indices;
+  //For every site index, the first index of a site at the same position, built the first time
+  //it is needed. Repeated sites share one cell, which belongs to the first of them.
+  private volatile int[] canonical;
+  //For every site, the sites sharing an edge with it, and the same before the edges were clipped
+  //to the region, which gives the exact shape of every cell. Each is built the first time it is
+  //needed, since most builds are only drawn or exported.
+  private volatile Adjacency neighbors;
+  private volatile Adjacency boxNeighbors;
+  //The convex region the build was clipped to, or null if it was clipped to the box
+  public final ConvexRegion region;
+  //The counters and timings of the build, or null if none were collected
+  public final SweepMetrics metrics;
+  //The cell measurements, computed the first time they are asked for
+  private volatile CellMetrics cellMetrics;
+  //The grid used to find the cell under a point, built the first time it is needed
+  private volatile SiteGrid grid;
+
+  /**
+   * Creates a snapshot from the output of a build. The given lists are copied.
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   * @param version the build number
+   * @param sites the sites of the build
+   * @param edges the finished edges of the build
+   * @param region the region the build was clipped to, if any
+   * @param boxEdges the edges clipped to the box only, if the build was clipped to a region
+   * @param metrics the metrics of the build, if collected
+   */
+  DiagramSnapshot(int width, int height, long version, List<Point> sites, List<Edge> edges,
+                  ConvexRegion region, List<Edge> boxEdges, SweepMetrics metrics) {
+    this.width = width;
+    this.height = height;
+    this.version = version;
+    this.sites = Collections.unmodifiableList(new ArrayList<>(sites));
+    this.edges = Collections.unmodifiableList(new ArrayList<>(edges));
+    this.region = region;
+    this.metrics = metrics;
+
+    this.boxEdges = boxEdges == null ? this.edges : new ArrayList<>(boxEdges);
+  }
+
+  /**
+   * The sites sharing an edge with each site, with the neighbors of site i at
+   * list[start[i]] to list[start[i + 1]] in increasing order
+   */
+  private static final class Adjacency {
+    final int[] start;
+    final int[] list;
+
+    Adjacency(int[] start, int[] list) {
+      this.start = start;
+      this.list = list;
+    }
+
+    int[] of(int site) {
+      return Arrays.copyOfRange(list, start[site], start[site + 1]);
+    }
+
+    int count(int site) {
+      return start[site + 1] - start[site];
+    }
+  }
+
+  /**
+   * Builds the site adjacency from the edges. Each pair of sites is listed once per side, even if
+   * the sweep produced their shared edge in several pieces: both ways round, every pair is packed
+   * into a long, and the longs are sorted so repeats are side by side. The sweep keeps whichever
+   * of a set of repeated sites it meets first, so edges are filed under the canonical site.
+   * @param edges the edges to build it from
+   * @return the neighbor indices of every site
+   */
+  private Adjacency buildNeighbors(List<Edge> edges) {
+    Map<Point, Integer> index = indices();
+    int[] first = canonical();
+    long[] pairs = new long[2 * edges.size()];
+    int count = 0;
+    for (Edge e : edges) {
+      Integer l = index.get(e.leftSite);
+      Integer r = index.get(e.rightSite);
+      if (l == null || r == null) continue;
+      int left = first[l];
+      int right = first[r];
+      if (left == right) continue;
+      pairs[count++] = ((long) left << 32) | right;
+      pairs[count++] = ((long) right << 32) | left;
+    }
+    Arrays.sort(pairs, 0, count);
+
+    int[] start = new int[sites.size() + 1];
+    int[] list = new int[count];
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      if (i > 0 && pairs[i] == pairs[i - 1]) continue;
+      start[(int) (pairs[i] >>> 32) + 1]++;
+      list[kept++] = (int) pairs[i];
+    }
+    for (int i = 0; i < sites.size(); i++) {
+      start[i + 1] += start[i];
+    }
+    return new Adjacency(start, Arrays.copyOf(list, kept));
+  }
+
+  private Map<Point, Integer> indices() {
+    Map<Point, Integer> result = indices;
+    if (result == null) {
+      result = new IdentityHashMap<>(sites.size() * 2);
+      for (int i = 0; i < sites.size(); i++) {
+        result.put(sites.get(i), i);
+      }
+      indices = result;
+    }
+    return result;
+  }
+
+  private int[] canonical() {
+    int[] result = canonical;
+    if (result == null) {
+      result = new int[sites.size()];
+      Map<Point, Integer> first = new HashMap<>(sites.size() * 2);
+      for (int i = 0; i < sites.size(); i++) {
+        Integer seen = first.putIfAbsent(sites.get(i), i);
+        result[i] = seen == null ? i : seen;
+      }
+      canonical = result;
+    }
+    return result;
+  }
+
+  private Adjacency neighbors() {
+    Adjacency result = neighbors;
+    if (result == null) {
+      result = buildNeighbors(edges);
+      neighbors = result;
+    }
+    return result;
+  }
+
+  private Adjacency boxNeighbors() {
+    if (boxEdges == edges) return neighbors();
+    Adjacency result = boxNeighbors;
+    if (result == null) {
+      result = buildNeighbors(boxEdges);
+      boxNeighbors = result;
+    }
+    return result;
+  }
+
+  /**
+   * Finds the index of the cell of the given site in this snapshot
+   * @param site a site of this snapshot
+   * @return the canonical index of the site, or -1 if the site is not part of this snapshot
+   */
+  public int indexOf(Point site) {
+    Integer i = indices().get(site);
+    return i == null ? -1 : canonical()[i];
+  }
+
+  /**
+   * Finds the site that owns the cell of a possibly repeated site. Only the first of a set of
+   * sites at the same position has a cell and neighbors; the others have none.
+   * @param site the index of the site
+   * @return the index of the first site at the same position
+   */
+  public int canonical(int site) {
+    return canonical()[site];
+  }
+
+  /**
+   * Finds the sites whose cells border the cell of the site with the given index
+   * @param site the index of the site
+   * @return a copy of the neighboring site indices
+   */
+  public int[] neighbors(int site) {
+    return neighbors().of(site);
+  }
+
+  /**
+   * Finds the sites whose cells border the cell of a site anywhere in the box, even outside the
+   * clip region.
+   * @param site the index of the site
+   * @return a copy of the neighboring site indices
+   */
+  int[] boxNeighbors(int site) {
+    return boxNeighbors().of(site);
+  }
+
+  /**
+   * Measures the area, centroid, perimeter and neighbor count of every cell. Computed on first
+   * use and then shared; if two threads ask at once, both may compute it.
+   * @return the cell metrics, indexed like the sites
+   */
+  public CellMetrics cellMetrics() {
+    CellMetrics result = cellMetrics;
+    if (result == null) {
+      result = CellMetrics.compute(this);
+      cellMetrics = result;
+    }
+    return result;
+  }
+
+  /**
+   * Finds the site whose cell holds a point. The first call builds a grid over the sites; after
+   * that a lookup only visits the sites near the point, so it is cheap enough to run on every
+   * mouse move.
+   * @param x the x coordinate of the point
+   * @param y the y coordinate of the point
+   * @return the index of the site, which is the first of any sites at the same position, or -1 if
+   *         the point is outside the diagram or its clip region
+   */
+  public int siteAt(double x, double y) {
+    if (!Util.inRangeIn(0, x, width) || !Util.inRangeIn(0, y, height)) return -1;
+    if (region != null && !region.contains(x, y)) return -1;
+    SiteGrid g = grid;
+    if (g == null) {
+      g = new SiteGrid(sites, canonical(), width, height);
+      grid = g;
+    }
+    return g.nearest(x, y);
+  }
+
+  /**
+   * Counts the sites whose cells border the cell of the site with the given index
+   * @param site the index of the site
+   * @return the number of neighbors
+   */
+  public int neighborCount(int site) {
+    return neighbors().count(site);
+  }
+}
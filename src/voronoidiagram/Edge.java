@@ -1,47 +1,59 @@
 package voronoidiagram;
 
 /**
- * Represents an edge in the diagram
+ * Represents an edge in the diagram. Edges never change once created, so a finished edge can be
+ * shared by any number of snapshots and readers; the sweep makes a new edge whenever it finds or
+ * moves an end.
  */
 public class Edge {
-  public Point start;
-  public Point end;
-  private Edge neighbor;
-  final double slope;
-  final double yAtZero;
+  public final Point start;
+  //Null while the sweep is still tracing the edge
+  public final Point end;
+  //The sites on either side of the edge
+  public final Point leftSite;
+  public final Point rightSite;
 
+  /**
+   * Creates an edge on the bisector of two sites whose end has yet to be found. Edges no longer
+   * carry a slope, since the bisector of two sites on the same row is vertical; vertices are found
+   * from the sites instead.
+   * @param start where the edge begins
+   * @param leftSite the site to the left of the edge
+   * @param rightSite the site to the right of the edge
+   */
   Edge(Point start, Point leftSite, Point rightSite) {
-    this.start = start;
-
-    //Direction is the vector perpendicular to the line between the left & right sites
-    this.slope = (rightSite.x - leftSite.x)/(leftSite.y - rightSite.y);
-
-    //End has yet to be found
-    end = null;
-
-    //Y when x = 0
-    this.yAtZero = start.y - slope * start.x;
+    this(start, null, leftSite, rightSite);
   }
 
+  private Edge(Point start, Point end, Point leftSite, Point rightSite) {
+    this.start = start;
+    this.end = end;
+    this.leftSite = leftSite;
+    this.rightSite = rightSite;
+  }
 
   /**
-   * Finds the intersection of this edge with another edge
-   * @param other the other edge
-   * @return the point of intersection
+   * Finishes this edge
+   * @param end where the edge ends
+   * @return the same edge ending at the given point
    */
-  Point intersectionWith(Edge other) {
-    if (this.slope == other.slope && this.yAtZero != other.yAtZero) return null;
-    double x = (other.yAtZero - this.yAtZero) / (this.slope - other.slope);
-    double y = this.slope * x + this.yAtZero;
-    return new Point(x, y);
+  Edge endingAt(Point end) {
+    return new Edge(start, end, leftSite, rightSite);
   }
 
   /**
-   * Sets the neighbor of this edge as well as that of the new neighbor edge
-   * @param neighbor the new neighbor
+   * Cuts this finished edge down to part of its length
+   * @param range the part that is kept, as fractions from start to end
+   * @return the kept part, or this edge if all of it is kept
    */
-  void setNeighbor(Edge neighbor) {
-    this.neighbor = neighbor;
-    this.neighbor.neighbor = this;
+  Edge portion(double[] range) {
+    if (range[0] <= 0 && range[1] >= 1) return this;
+    double dx = end.x - start.x;
+    double dy = end.y - start.y;
+    Point from = range[0] > 0
+            ? new Point(start.x + range[0] * dx, start.y + range[0] * dy) : start;
+    Point to = range[1] < 1
+            ? new Point(start.x + range[1] * dx, start.y + range[1] * dy) : end;
+    return new Edge(from, to, leftSite, rightSite);
   }
 }
@@ -6,6 +6,8 @@ package voronoidiagram;
 public class Event implements Comparable<Event> {
   final Point site;
   final Arc arc;
+  //The center of the circle, for circle events
+  final Point center;
   final Type type;
   boolean isValid;
 
@@ -16,16 +18,20 @@ public class Event implements Comparable<Event> {
   public Event(Point site) {
     this.site = site;
     this.arc = null;
+    this.center = null;
     this.type = Type.SITE;
     this.isValid = true;
   }
 
   /**
    * Creates a circle event
+   * @param site the bottom of the circle
+   * @param center the center of the circle, where the vertex will be
    * @param arc the arc that will disappear
    */
-  public Event(Point site, Arc arc) {
+  Event(Point site, Point center, Arc arc) {
     this.site = site;
+    this.center = center;
     this.arc = arc;
     arc.disappearance = this;
     this.type = Type.CIRCLE;
@@ -0,0 +1,26 @@
+package voronoidiagram;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Represents a Flight Recorder event spanning a change to a diagram's sites, including the rebuild
+ * it causes
+ */
+@Name("voronoi.Mutation")
+@Label("Diagram Mutation")
+@Category({"Voronoi", "Diagram"})
+@Description("Sites added to or removed from a diagram, followed by a rebuild")
+class MutationEvent extends Event {
+  @Label("Operation")
+  String operation;
+
+  @Label("Sites Changed")
+  int sitesChanged;
+
+  @Label("Site Count")
+  int siteCount;
+}
@@ -31,20 +31,27 @@ public class Point implements Comparable<Point> {
     }
   }
 
+  @Override
+  public int hashCode() {
+    return 31 * Double.hashCode(x) + Double.hashCode(y);
+  }
+
   /**
-   * Compares this point to the given point based on y-coordinate. Considers two coordinates to
-   * be equal if their difference is less than 0.001.
+   * Compares this point to the given point based on y-coordinate, then x-coordinate. The
+   * comparison is exact, so points on the same row are swept from left to right.
    * @param o the point being compared
    * @return 1 if this point is greater than the other, -1 if the other is greater than this, 0 if
    *          they are equivalent
    */
   @Override
   public int compareTo(Point o) {
-    int yComp = Util.doubleComp(this.y, o.y);
-    if (yComp > 0) {
-      return 1;
-    } else if (yComp < 0) {
-      return -1;
+    int yComp = Double.compare(this.y, o.y);
+    if (yComp != 0) {
+      return yComp > 0 ? 1 : -1;
+    }
+    int xComp = Double.compare(this.x, o.x);
+    if (xComp != 0) {
+      return xComp > 0 ? 1 : -1;
     }
     return 0;
   }
@@ -0,0 +1,187 @@
+package voronoidiagram;
+
+import java.math.BigDecimal;
+
+/**
+ * Geometric predicates that always give the correct sign. Each predicate first evaluates its
+ * determinant in plain floating-point arithmetic together with a bound on the rounding error; only
+ * when the result is too close to zero to trust is it recomputed exactly. Based on Shewchuk's
+ * "Adaptive Precision Floating-Point Arithmetic and Fast Robust Geometric Predicates".
+ */
+public final class Predicates {
+  //Machine epsilon for doubles, 2^-53
+  private static final double EPSILON = 0x1p-53;
+  //Relative error bounds of the floating-point evaluations
+  private static final double ORIENT_BOUND = (3.0 + 16.0 * EPSILON) * EPSILON;
+  private static final double INCIRCLE_BOUND = (10.0 + 96.0 * EPSILON) * EPSILON;
+
+  private Predicates() {
+  }
+
+  /**
+   * Finds the orientation of three points: the sign of (b - a) x (c - a). With y pointing down, as
+   * on screen, a positive result means a, b, c turn clockwise.
+   * @param a the first point
+   * @param b the second point
+   * @param c the third point
+   * @return 1 if positive, -1 if negative, 0 if the points are collinear
+   */
+  public static int orient(Point a, Point b, Point c) {
+    return orient(a.x, a.y, b.x, b.y, c.x, c.y);
+  }
+
+  /**
+   * Finds the orientation of three points given by their coordinates
+   * @return 1 if positive, -1 if negative, 0 if the points are collinear
+   */
+  public static int orient(double ax, double ay, double bx, double by, double cx, double cy) {
+    double left = (bx - ax) * (cy - ay);
+    double right = (by - ay) * (cx - ax);
+    double det = left - right;
+
+    //If the two products have different signs the subtraction cannot cancel
+    double sum;
+    if (left > 0) {
+      if (right <= 0) return signum(det);
+      sum = left + right;
+    } else if (left < 0) {
+      if (right >= 0) return signum(det);
+      sum = -left - right;
+    } else {
+      return signum(det);
+    }
+    if (Math.abs(det) >= ORIENT_BOUND * sum) return signum(det);
+    return orientExact(ax, ay, bx, by, cx, cy);
+  }
+
+  /**
+   * Checks where d lies relative to the circle through a, b and c. The sign follows the
+   * orientation of a, b, c: if orient(a, b, c) is positive, a positive result means d is inside.
+   * @param a the first point on the circle
+   * @param b the second point on the circle
+   * @param c the third point on the circle
+   * @param d the point being tested
+   * @return 1 if positive, -1 if negative, 0 if the four points are cocircular
+   */
+  public static int inCircle(Point a, Point b, Point c, Point d) {
+    double adx = a.x - d.x;
+    double ady = a.y - d.y;
+    double bdx = b.x - d.x;
+    double bdy = b.y - d.y;
+    double cdx = c.x - d.x;
+    double cdy = c.y - d.y;
+
+    double bdxcdy = bdx * cdy;
+    double cdxbdy = cdx * bdy;
+    double alift = adx * adx + ady * ady;
+    double cdxady = cdx * ady;
+    double adxcdy = adx * cdy;
+    double blift = bdx * bdx + bdy * bdy;
+    double adxbdy = adx * bdy;
+    double bdxady = bdx * ady;
+    double clift = cdx * cdx + cdy * cdy;
+
+    double det = alift * (bdxcdy - cdxbdy)
+            + blift * (cdxady - adxcdy)
+            + clift * (adxbdy - bdxady);
+    double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift
+            + (Math.abs(cdxady) + Math.abs(adxcdy)) * blift
+            + (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+    if (Math.abs(det) > INCIRCLE_BOUND * permanent) return signum(det);
+    return inCircleExact(a, b, c, d);
+  }
+
+  /**
+   * Finds the center of the circle through three points that are not collinear. The coordinates
+   * are taken relative to the point opposite the longest side, which keeps the rounding error
+   * small even when two of the points are nearly the same.
+   * @return the center, or null if the points are too close to collinear to have a finite center
+   */
+  public static Point circumcenter(Point a, Point b, Point c) {
+    //Rotate the points, which keeps their orientation, until a is opposite the longest side
+    double ab = distSq(a, b);
+    double bc = distSq(b, c);
+    double ca = distSq(c, a);
+    if (ab >= bc && ab >= ca) return centerFrom(c, a, b);
+    if (ca >= bc) return centerFrom(b, c, a);
+    return centerFrom(a, b, c);
+  }
+
+  private static double distSq(Point p, Point q) {
+    double dx = q.x - p.x;
+    double dy = q.y - p.y;
+    return dx * dx + dy * dy;
+  }
+
+  private static Point centerFrom(Point a, Point b, Point c) {
+    double bx = b.x - a.x;
+    double by = b.y - a.y;
+    double cx = c.x - a.x;
+    double cy = c.y - a.y;
+    double left = bx * cy;
+    double right = by * cx;
+    double det = left - right;
+    //For nearly collinear points the determinant cancels and may even get the wrong sign, which
+    //would put the center on the wrong side; take it exactly then
+    if (Math.abs(det) <= ORIENT_BOUND * (Math.abs(left) + Math.abs(right))) {
+      det = orientDeterminant(a.x, a.y, b.x, b.y, c.x, c.y).doubleValue();
+    }
+    double d = 2 * det;
+    if (d == 0) return null;
+    double bLift = bx * bx + by * by;
+    double cLift = cx * cx + cy * cy;
+    double x = (cy * bLift - by * cLift) / d;
+    double y = (bx * cLift - cx * bLift) / d;
+    if (Double.isInfinite(x) || Double.isInfinite(y)) return null;
+    return new Point(a.x + x, a.y + y);
+  }
+
+  //******************************EXACT FALLBACKS***************************************//
+
+  private static int orientExact(double ax, double ay, double bx, double by, double cx,
+                                 double cy) {
+    return orientDeterminant(ax, ay, bx, by, cx, cy).signum();
+  }
+
+  private static BigDecimal orientDeterminant(double ax, double ay, double bx, double by,
+                                              double cx, double cy) {
+    BigDecimal x1 = exact(bx).subtract(exact(ax));
+    BigDecimal y1 = exact(cy).subtract(exact(ay));
+    BigDecimal y2 = exact(by).subtract(exact(ay));
+    BigDecimal x2 = exact(cx).subtract(exact(ax));
+    return x1.multiply(y1).subtract(y2.multiply(x2));
+  }
+
+  private static int inCircleExact(Point a, Point b, Point c, Point d) {
+    BigDecimal dx = exact(d.x);
+    BigDecimal dy = exact(d.y);
+    BigDecimal adx = exact(a.x).subtract(dx);
+    BigDecimal ady = exact(a.y).subtract(dy);
+    BigDecimal bdx = exact(b.x).subtract(dx);
+    BigDecimal bdy = exact(b.y).subtract(dy);
+    BigDecimal cdx = exact(c.x).subtract(dx);
+    BigDecimal cdy = exact(c.y).subtract(dy);
+
+    BigDecimal alift = adx.multiply(adx).add(ady.multiply(ady));
+    BigDecimal blift = bdx.multiply(bdx).add(bdy.multiply(bdy));
+    BigDecimal clift = cdx.multiply(cdx).add(cdy.multiply(cdy));
+
+    BigDecimal det = alift.multiply(bdx.multiply(cdy).subtract(cdx.multiply(bdy)))
+            .add(blift.multiply(cdx.multiply(ady).subtract(adx.multiply(cdy))))
+            .add(clift.multiply(adx.multiply(bdy).subtract(bdx.multiply(ady))));
+    return det.signum();
+  }
+
+  /**
+   * Converts a double to a BigDecimal without any rounding
+   */
+  private static BigDecimal exact(double d) {
+    return new BigDecimal(d);
+  }
+
+  private static int signum(double d) {
+    if (d > 0) return 1;
+    if (d < 0) return -1;
+    return 0;
+  }
+}
@@ -0,0 +1,109 @@
+package voronoidiagram;
+
+import java.util.List;
+
+/**
+ * Finds the site nearest a point, which is the site whose cell holds it, using a uniform grid of
+ * buckets sized to hold about two sites each. A lookup scans rings of buckets outwards from the
+ * point and stops once no closer site can be left, so for evenly spread sites it takes constant
+ * time however many sites there are.
+ *
+ * Only the first of a set of sites at the same position is put in the grid, so a lookup always
+ * gives the site that owns the cell, never one of its copies.
+ */
+final class SiteGrid {
+  //The average number of sites per bucket
+  private static final double SITES_PER_BUCKET = 2;
+
+  private final double bucketSize;
+  private final int columns;
+  private final int rows;
+  //The sites of bucket b are order[start[b]] up to (not including) order[start[b + 1]]
+  private final int[] start;
+  private final int[] order;
+  private final double[] xs;
+  private final double[] ys;
+
+  /**
+   * Builds the grid
+   * @param sites the sites
+   * @param canonical for every site, the index of the first site at the same position
+   * @param width the width of the diagram
+   * @param height the height of the diagram
+   */
+  SiteGrid(List<Point> sites, int[] canonical, int width, int height) {
+    int n = sites.size();
+    this.bucketSize = Math.max(1e-9,
+            Math.sqrt((double) width * height * SITES_PER_BUCKET / Math.max(1, n)));
+    this.columns = Math.max(1, (int) Math.ceil(width / bucketSize));
+    this.rows = Math.max(1, (int) Math.ceil(height / bucketSize));
+    this.xs = new double[n];
+    this.ys = new double[n];
+
+    //Counting sort of the sites by bucket, leaving out repeated sites
+    int[] bucketOf = new int[n];
+    this.start = new int[columns * rows + 1];
+    int kept = 0;
+    for (int i = 0; i < n; i++) {
+      xs[i] = sites.get(i).x;
+      ys[i] = sites.get(i).y;
+      if (canonical[i] != i) continue;
+      bucketOf[i] = row(ys[i]) * columns + column(xs[i]);
+      start[bucketOf[i] + 1]++;
+      kept++;
+    }
+    for (int b = 0; b < columns * rows; b++) {
+      start[b + 1] += start[b];
+    }
+    this.order = new int[kept];
+    int[] fill = start.clone();
+    for (int i = 0; i < n; i++) {
+      if (canonical[i] == i) order[fill[bucketOf[i]]++] = i;
+    }
+  }
+
+  /**
+   * Finds the site nearest to a point
+   * @return the index of the site, or -1 if there are no sites
+   */
+  int nearest(double x, double y) {
+    int cx = column(x);
+    int cy = row(y);
+    int best = -1;
+    double bestDist = Double.POSITIVE_INFINITY;
+    int maxRing = Math.max(columns, rows);
+    for (int ring = 0; ring <= maxRing; ring++) {
+      //Every site in this ring or a later one is at least this far from the point
+      double reach = (ring - 1) * bucketSize;
+      if (best >= 0 && bestDist <= reach * reach) break;
+      for (int by = cy - ring; by <= cy + ring; by++) {
+        if (by < 0 || by >= rows) continue;
+        //Inner rows of the ring only have their two end buckets
+        int step = by == cy - ring || by == cy + ring ? 1 : Math.max(1, 2 * ring);
+        for (int bx = cx - ring; bx <= cx + ring; bx += step) {
+          if (bx < 0 || bx >= columns) continue;
+          int b = by * columns + bx;
+          for (int k = start[b]; k < start[b + 1]; k++) {
+            int i = order[k];
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            double dist = dx * dx + dy * dy;
+            if (dist < bestDist) {
+              best = i;
+              bestDist = dist;
+            }
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  private int column(double x) {
+    return Math.min(columns - 1, Math.max(0, (int) (x / bucketSize)));
+  }
+
+  private int row(double y) {
+    return Math.min(rows - 1, Math.max(0, (int) (y / bucketSize)));
+  }
+}
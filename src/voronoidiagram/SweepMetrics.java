@@ -0,0 +1,96 @@
+package voronoidiagram;
+
+/**
+ * Represents the counters and phase timings collected during one build of the diagram. Only
+ * collected when enabled on the Voronoi generator; a finished build never changes its metrics.
+ */
+public final class SweepMetrics {
+  //Event counters
+  int siteEvents;
+  int circleEvents;
+  int invalidatedCircleEvents;
+  int peakQueueSize;
+  //The deepest descent through the beachline while looking for the arc above a site
+  int maxBeachlineDepth;
+  //Phase timings, in nanoseconds
+  long queueSetupNanos;
+  long sweepNanos;
+  long finishEdgesNanos;
+  long trimEdgesNanos;
+
+  SweepMetrics() {
+  }
+
+  /**
+   * Records the current size of the event queue, keeping the largest seen
+   * @param size the size of the queue
+   */
+  void queueSize(int size) {
+    if (size > peakQueueSize) peakQueueSize = size;
+  }
+
+  /**
+   * Records the depth reached by one beachline search, keeping the largest seen
+   * @param depth the number of internal nodes passed
+   */
+  void beachlineDepth(int depth) {
+    if (depth > maxBeachlineDepth) maxBeachlineDepth = depth;
+  }
+
+  public int getSiteEvents() {
+    return siteEvents;
+  }
+
+  public int getCircleEvents() {
+    return circleEvents;
+  }
+
+  public int getInvalidatedCircleEvents() {
+    return invalidatedCircleEvents;
+  }
+
+  public int getPeakQueueSize() {
+    return peakQueueSize;
+  }
+
+  public int getMaxBeachlineDepth() {
+    return maxBeachlineDepth;
+  }
+
+  public long getQueueSetupNanos() {
+    return queueSetupNanos;
+  }
+
+  public long getSweepNanos() {
+    return sweepNanos;
+  }
+
+  public long getFinishEdgesNanos() {
+    return finishEdgesNanos;
+  }
+
+  public long getTrimEdgesNanos() {
+    return trimEdgesNanos;
+  }
+
+  /**
+   * The total time of all measured phases
+   * @return the time in nanoseconds
+   */
+  public long getTotalNanos() {
+    return queueSetupNanos + sweepNanos + finishEdgesNanos + trimEdgesNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "sites=" + siteEvents
+            + " circles=" + circleEvents
+            + " invalidated=" + invalidatedCircleEvents
+            + " peakQueue=" + peakQueueSize
+            + " maxDepth=" + maxBeachlineDepth
+            + " setupNs=" + queueSetupNanos
+            + " sweepNs=" + sweepNanos
+            + " finishNs=" + finishEdgesNanos
+            + " trimNs=" + trimEdgesNanos;
+  }
+}
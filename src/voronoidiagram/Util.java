@@ -26,18 +26,23 @@ public class Util {
   }
 
   /**
-   * Compares two doubles with a margin of 0.0001
-   * @param a the first double
-   * @param b the second double
-   * @return 0 for equality, 1 if a > b, -1 if a < b
+   * Narrows the kept range of a segment against one side of a box, as one step of the
+   * Liang-Barsky clipping method
+   * @param p the rate the segment moves towards the outside of the side
+   * @param q the distance from the segment's start to the side
+   * @param range the kept range as fractions from start to end, updated in place
+   * @return whether anything is left of the range
    */
-  public static int doubleComp(double a, double b) {
-    if (Math.abs(a - b) < 0.0001) {
-      return 0;
+  public static boolean clipRange(double p, double q, double[] range) {
+    if (p == 0) return q >= 0;
+    double t = q / p;
+    if (p < 0) {
+      if (t > range[1]) return false;
+      if (t > range[0]) range[0] = t;
+    } else {
+      if (t < range[0]) return false;
+      if (t < range[1]) range[1] = t;
     }
-    else if(a < b) {
-      return -1;
-    }
-    return 1;
+    return true;
   }
 }
\ No newline at end of file
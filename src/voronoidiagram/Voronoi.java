@@ -1,9 +1,12 @@
 package voronoidiagram;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents the main generator of the Voronoi diagram. Uses Fortune's Algorithm.
@@ -12,16 +15,27 @@ public class Voronoi {
   //Dimensions
   public final int width;
   public final int height;
-  //The points the edges are based off of
-  public ArrayList<Point> sites;
-  //The edges generated
-  public ArrayList<Edge> edges;
+  //The points the edges are based off of, only touched by the writer
+  private final ArrayList<Point> sites;
+  //The edges generated by the build in progress
+  private ArrayList<Edge> edges;
+  //The convex region edges are clipped to instead of the box, or null for the box
+  private ConvexRegion region;
+  //With a region, the edges of the build in progress clipped to the box only; null without one
+  private ArrayList<Edge> boxEdges;
+  //The last finished build, read lock-free by any thread
+  private final AtomicReference<DiagramSnapshot> snapshot = new AtomicReference<>();
   //The beachline of arcs based on their y-coordinate
   private Arc beachline;
   //The queue of events based on y-coordinate, ascending
   private PriorityQueue<Event> events;
   //The current y-coordinate of the sweepline
   private double sweepline;
+  //Whether builds collect metrics, and the metrics of the build in progress (null when disabled)
+  private volatile boolean collectMetrics;
+  private SweepMetrics metrics;
+  //Picks the sites added and deleted at random
+  private final Random random = new Random();
 
   /**
    * Creates a new Voronoi generator, then generates the edges.
@@ -32,38 +46,225 @@ public class Voronoi {
    *               dimensions.
    */
   public Voronoi(int width, int height, ArrayList<Point> sites) {
+    this(width, height, sites, false);
+  }
+
+  /**
+   * Creates a new Voronoi generator, then generates the edges.
+   *
+   * @param width          the width of the diagram
+   * @param height         the height of the diagram
+   * @param sites          the points to base the diagram off of- must be within the given diagram
+   *                       dimensions.
+   * @param collectMetrics whether each build records its event counts and phase timings
+   */
+  public Voronoi(int width, int height, ArrayList<Point> sites, boolean collectMetrics) {
+    this(width, height, sites, collectMetrics, null);
+  }
+
+  /**
+   * Creates a new Voronoi generator whose edges are clipped to a convex region, then generates
+   * the edges.
+   *
+   * @param width  the width of the diagram
+   * @param height the height of the diagram
+   * @param sites  the points to base the diagram off of- must be within the given diagram
+   *               dimensions.
+   * @param region the region to clip to, which must lie within the diagram dimensions, or null
+   *               to clip to the whole diagram
+   * @throws IllegalArgumentException if the region reaches outside the diagram
+   */
+  public Voronoi(int width, int height, ArrayList<Point> sites, ConvexRegion region) {
+    this(width, height, sites, false, region);
+  }
+
+  private Voronoi(int width, int height, ArrayList<Point> sites, boolean collectMetrics,
+                  ConvexRegion region) {
     this.width = width;
     this.height = height;
-    this.sites = sites;
+    this.sites = new ArrayList<>(sites);
+    this.collectMetrics = collectMetrics;
+    this.region = checkRegion(region);
 
     //Initialize the rest of the fields and generate the diagram
     this.resetDiagram();
   }
 
+  /**
+   * Creates a generator used as reusable scratch space by batch builds. It has no sites, builds
+   * nothing and publishes no snapshot; {@link #sweep()} is called on it directly.
+   *
+   * @param width  the width of the diagrams
+   * @param height the height of the diagrams
+   */
+  Voronoi(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.sites = new ArrayList<>();
+  }
+
+  /**
+   * Returns the last finished build of the diagram. The snapshot is immutable, so callers on any
+   * thread can use it for as long as they like, even while the sites are being changed.
+   * @return the current snapshot
+   */
+  public DiagramSnapshot snapshot() {
+    return snapshot.get();
+  }
+
+  /**
+   * Turns metrics collection on or off for the following builds. When off, builds carry no
+   * metrics and skip all counting and timing.
+   * @param collectMetrics whether to collect metrics
+   */
+  public void setCollectMetrics(boolean collectMetrics) {
+    this.collectMetrics = collectMetrics;
+  }
+
+  /**
+   * Returns the metrics of the last finished build
+   * @return the metrics, or null if that build did not collect any
+   */
+  public SweepMetrics lastMetrics() {
+    return snapshot.get().metrics;
+  }
+
+  /**
+   * Measures every cell of the last finished build
+   * @return the area, centroid, perimeter and neighbor count of each site's cell
+   */
+  public CellMetrics cellMetrics() {
+    return snapshot.get().cellMetrics();
+  }
+
+  /**
+   * Clips the diagram to a convex region and regenerates it. Edges and cells outside the region
+   * are dropped, but every site is kept; sites outside the region have empty cells.
+   * @param region the region to clip to, which must lie within the diagram dimensions, or null
+   *               to clip to the whole diagram
+   * @throws IllegalArgumentException if the region reaches outside the diagram
+   */
+  public synchronized void setClipRegion(ConvexRegion region) {
+    this.region = checkRegion(region);
+    this.resetDiagram();
+  }
+
+  private ConvexRegion checkRegion(ConvexRegion region) {
+    if (region != null && !region.within(width, height)) {
+      throw new IllegalArgumentException("Clip region must lie within the diagram!");
+    }
+    return region;
+  }
+
   /**
    * Regenerates the diagram's edges using the current sites. Due to the nature of Fortune's
-   * Algorithm, the entire diagram must be regenerated whenever the sites change.
+   * Algorithm, the entire diagram must be regenerated whenever the sites change. Once finished,
+   * the result is published as a new snapshot.
    */
   private void resetDiagram() {
-    this.events = new PriorityQueue<>();
+    BuildEvent event = new BuildEvent();
+    event.begin();
+    this.metrics = collectMetrics ? new SweepMetrics() : null;
+    this.sweep();
+
+    DiagramSnapshot last = snapshot.get();
+    long version = last == null ? 1 : last.version + 1;
+    DiagramSnapshot built = new DiagramSnapshot(width, height, version, sites, edges, region,
+            boxEdges, metrics);
+    snapshot.set(built);
+    event.end();
+    if (event.shouldCommit()) {
+      event.mode = "full";
+      event.siteCount = built.sites.size();
+      event.edgeCount = built.edges.size();
+      event.version = version;
+      event.commit();
+    }
+    //The published snapshot keeps its own copies, so the build state can be dropped
+    this.edges = null;
+    this.boxEdges = null;
+    this.events = null;
+    this.beachline = null;
+    this.metrics = null;
+  }
+
+  /**
+   * Runs Fortune's Algorithm over the current sites. The event queue and edge list are reused
+   * from the previous sweep when they are still around, so a scratch generator can sweep many
+   * small site sets without reallocating them.
+   *
+   * @return the edges, which are only valid until the next sweep
+   */
+  ArrayList<Edge> sweep() {
+    long start = metrics != null ? System.nanoTime() : 0;
+    if (this.events == null) {
+      this.events = new PriorityQueue<>(Math.max(11, 2 * sites.size()));
+    } else {
+      this.events.clear();
+    }
     for (Point p : sites) {
       events.add(new Event(p));
     }
-    this.edges = new ArrayList<>();
+    if (metrics != null) {
+      metrics.queueSetupNanos = System.nanoTime() - start;
+      metrics.queueSize(events.size());
+    }
+    if (this.edges == null) {
+      this.edges = new ArrayList<>(4 * sites.size());
+    } else {
+      this.edges.clear();
+    }
     this.beachline = null;
     this.sweepline = 0;
-    this.generateEdges();
+    return this.generateEdges();
+  }
+
+  /**
+   * Replaces the sites of a scratch generator with the packed coordinates x0, y0, x1, y1, ...
+   *
+   * @param coords the packed coordinates
+   * @param from   the index of the first site
+   * @param to     the index after the last site
+   */
+  void loadSites(double[] coords, int from, int to) {
+    sites.clear();
+    sites.ensureCapacity(to - from);
+    for (int i = from; i < to; i++) {
+      sites.add(new Point(coords[2 * i], coords[2 * i + 1]));
+    }
+  }
+
+  /**
+   * Replaces the sites of a scratch generator with the given ones
+   *
+   * @param points the sites
+   */
+  void loadSites(List<Point> points) {
+    sites.clear();
+    sites.addAll(points);
   }
 
   //******************************CHANGING POINTS***************************************//
 
+  /**
+   * Seeds the choice of random sites to add and delete, so a sequence of edits can be repeated
+   * @param seed the seed
+   */
+  public synchronized void setSeed(long seed) {
+    this.random.setSeed(seed);
+  }
+
   /**
    * Adds a new random site and regenerates the diagram.
    */
-  public void addSite() {
-    Random r = new Random();
-    double x = r.nextDouble() * width;
-    double y = r.nextDouble() * height;
+  public synchronized void addSite() {
+    double x;
+    double y;
+    //The site must be strictly inside the diagram
+    do {
+      x = random.nextDouble() * width;
+      y = random.nextDouble() * height;
+    } while (x == 0 || y == 0);
     this.addSite(x, y);
   }
 
@@ -74,7 +275,7 @@ public class Voronoi {
    * @param y The site's y coordinate.
    * @throws IllegalArgumentException if the site's coordinates are out of bounds.
    */
-  public void addSite(double x, double y) throws IllegalArgumentException {
+  public synchronized void addSite(double x, double y) throws IllegalArgumentException {
     if (!Util.inRangeEx(0, x, this.width)) {
       throw new IllegalArgumentException("X coordinate of site out of bounds!");
     }
@@ -84,18 +285,38 @@ public class Voronoi {
     //Add the new point if it doesn't already exist, then regenerate the diagram
     Point p = new Point(x, y);
     if (!sites.contains(p)) {
+      MutationEvent event = new MutationEvent();
+      event.begin();
       this.sites.add(new Point(x, y));
       this.resetDiagram();
+      commitMutation(event, "add");
     }
   }
 
   /**
    * Deletes a random site and regenerates the diagram.
    */
-  public void delSite() {
-    Random r = new Random();
-    this.sites.remove(r.nextInt(sites.size()));
+  public synchronized void delSite() {
+    MutationEvent event = new MutationEvent();
+    event.begin();
+    this.sites.remove(random.nextInt(sites.size()));
     this.resetDiagram();
+    commitMutation(event, "delete");
+  }
+
+  /**
+   * Ends and commits a mutation event of a single site, if it is being recorded
+   * @param event the event, already begun
+   * @param operation the name of the change
+   */
+  private void commitMutation(MutationEvent event, String operation) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.sitesChanged = 1;
+      event.siteCount = sites.size();
+      event.commit();
+    }
   }
 
   //******************************MAIN GENERATION***************************************//
@@ -106,6 +327,8 @@ public class Voronoi {
    * @return The edges.
    */
   private ArrayList<Edge> generateEdges() {
+    long start = metrics != null ? System.nanoTime() : 0;
+    Point lastSite = null;
     //Process events until the queue is empty, when there are no sites left
     while (!events.isEmpty()) {
       //Get next event
@@ -114,6 +337,10 @@ public class Voronoi {
       sweepline = next.site.y;
       //process the circle or site event, respectively
       if (next.type == Event.Type.SITE) {
+        //Repeated sites come out of the queue back to back and add nothing
+        if (next.site.equals(lastSite)) continue;
+        lastSite = next.site;
+        if (metrics != null) metrics.siteEvents++;
         this.handleSite(next.site);
       } else {
         if (next.isValid) {
@@ -124,50 +351,116 @@ public class Voronoi {
     //All events have been processed.
 
     //Clean up infinite edges.
-    sweepline = width + height;
+    if (metrics == null) {
+      this.finishEdges();
+      this.trimEdges();
+      return this.edges;
+    }
+    long finish = System.nanoTime();
+    metrics.sweepNanos = finish - start;
     this.finishEdges();
+    long trim = System.nanoTime();
+    metrics.finishEdgesNanos = trim - finish;
     this.trimEdges();
+    metrics.trimEdgesNanos = System.nanoTime() - trim;
     return this.edges;
   }
 
   /**
-   * Fix the end of all edges on this arc and its descendants
+   * Fix the end of all edges left on the beachline. The tree is walked with a stack of its own,
+   * since it is not balanced: sites on one line leave it as deep as there are sites.
    */
   private void finishEdges() {
-    this.finishEdges(beachline);
+    ArrayDeque<Arc> pending = new ArrayDeque<>();
+    if (beachline != null) pending.push(beachline);
+    while (!pending.isEmpty()) {
+      Arc arc = pending.pop();
+      if (arc.onBeach) continue;
+      finishEdge(arc);
+      //Right first, so the left subtree is finished first as before
+      if (arc.rightChild != null) pending.push(arc.rightChild);
+      if (arc.leftChild != null) pending.push(arc.leftChild);
+    }
   }
 
   /**
-   * Fix the end of edges on this arc and its descendants
-   * @param arc the arc to be cleaned
+   * Fix the end of the edge traced by a breakpoint
+   * @param arc the breakpoint's node
    */
-  private void finishEdges(Arc arc) {
-    if (arc.onBeach) return;
-
-    double x = getXofEdge(arc);
-    arc.edge.end = new Point(x, arc.edge.slope * x + arc.edge.yAtZero);
-    edges.add(arc.edge);
-
-    finishEdges(arc.leftChild);
-    finishEdges(arc.rightChild);
+  private void finishEdge(Arc arc) {
+    //Once the sweep has passed every event, the breakpoint runs along the bisector of the two
+    //sites forever, away from the left site's side. End the edge beyond the box in that direction
+    //instead of evaluating the breakpoint at some sweepline, which may still lie inside the box or,
+    //after a far circle event from nearly collinear sites, before the last event.
+    Point left = arc.leftArc.focus;
+    Point right = arc.rightArc.focus;
+    double dx = left.y - right.y;
+    double dy = right.x - left.x;
+    Point start = arc.edge.start;
+    double reach = (2.0 * (width + height) + Math.abs(start.x) + Math.abs(start.y))
+            / Math.sqrt(dx * dx + dy * dy);
+    edges.add(arc.edge.endingAt(new Point(start.x + reach * dx, start.y + reach * dy)));
   }
 
   /**
-   * Fixes the edges that are out of bounds
+   * Fixes the edges that are out of bounds by clipping them to the diagram, and then to the clip
+   * region when there is one. The edges clipped only to the diagram are kept aside, since the
+   * cells are shaped by them even where they leave the region. Edges entirely outside are
+   * dropped.
    */
   private void trimEdges() {
-    ArrayList<Edge> newEdges = new ArrayList<>();
-    for (Edge e : edges) {
-      if (!Util.inRangeIn(0, e.start.x, width) || Util.inRangeIn(0, e.start.y, height)) {
-        e.start = new Point(e.start.x, e.slope * e.start.x + e.yAtZero);
+    if (region != null) boxEdges = new ArrayList<>(edges.size());
+    //Compact the kept edges in place, so the list can be reused by the next sweep
+    int kept = 0;
+    for (int i = 0; i < edges.size(); i++) {
+      Edge clipped = clipToBox(edges.get(i));
+      if (clipped != null && region != null) {
+        boxEdges.add(clipped);
+        clipped = region.clip(clipped);
       }
-      if(!Util.inRangeIn(0, e.end.x, width) || Util.inRangeIn(0, e.end.y, height)) {
-        e.end = new Point(e.end.x, e.slope * e.end.x + e.yAtZero);
+      if (clipped != null) {
+        edges.set(kept++, clipped);
       }
-      newEdges.add(e);
     }
+    edges.subList(kept, edges.size()).clear();
+  }
 
-    edges = newEdges;
+  /**
+   * Clips an edge to the 0..width x 0..height box using the Liang-Barsky method
+   * @param e the edge to clip
+   * @return the part of the edge inside the box, with its ends moved onto the box if needed, or
+   *         null if no part of it is inside
+   */
+  private Edge clipToBox(Edge e) {
+    //An edge with both ends past the same side is outside
+    if ((e.start.x < 0 && e.end.x < 0) || (e.start.x > width && e.end.x > width)
+            || (e.start.y < 0 && e.end.y < 0) || (e.start.y > height && e.end.y > height)) {
+      return null;
+    }
+    //Clip the bisector the edge lies on, from its sites' midpoint, rather than the segment between
+    //the ends. An end can be very far out, such as a vertex of sites a few ulps off one row, and
+    //fractions of so long a segment are too coarse to place the new ends.
+    double mx = (e.leftSite.x + e.rightSite.x) / 2;
+    double my = (e.leftSite.y + e.rightSite.y) / 2;
+    double dx = e.leftSite.y - e.rightSite.y;
+    double dy = e.rightSite.x - e.leftSite.x;
+    double lengthSq = dx * dx + dy * dy;
+    //The ends as multiples of (dx, dy) from the midpoint
+    double from = ((e.start.x - mx) * dx + (e.start.y - my) * dy) / lengthSq;
+    double to = ((e.end.x - mx) * dx + (e.end.y - my) * dy) / lengthSq;
+    double[] range = {Math.min(from, to), Math.max(from, to)};
+    if (!Util.clipRange(-dx, mx, range)
+            || !Util.clipRange(dx, width - mx, range)
+            || !Util.clipRange(-dy, my, range)
+            || !Util.clipRange(dy, height - my, range)) {
+      return null;
+    }
+    double newFrom = from <= to ? range[0] : range[1];
+    double newTo = from <= to ? range[1] : range[0];
+    if (newFrom == from && newTo == to) return e;
+    Point start = newFrom == from ? e.start : new Point(mx + newFrom * dx, my + newFrom * dy);
+    Point end = newTo == to ? e.end : new Point(mx + newTo * dx, my + newTo * dy);
+    return new Edge(start, e.leftSite, e.rightSite).endingAt(end);
   }
 
 
@@ -179,7 +472,7 @@ public class Voronoi {
    *
    * @param site The site that is the source of the event
    */
-  public void handleSite(Point site) {
+  private void handleSite(Point site) {
 
     //Add the very first arc if the beachline is empty
     if (beachline == null) {
@@ -191,19 +484,34 @@ public class Voronoi {
     //Find the arc directly above the new site.
     Arc above = this.findArcAbove(site.x);
 
+    //An arc whose site is on the sweepline is still a vertical ray, so it cannot be split
+    if (above.focus.y == site.y) {
+      this.handleSiteOnRow(above, site);
+      return;
+    }
+
 
     //Remove the arc's associated circle event, since the arc is being split/destroyed
     if (above.disappearance != null) {
       above.disappearance.isValid = false;
+      if (metrics != null) metrics.invalidatedCircleEvents++;
       above.disappearance = null;
     }
 
-    //Start a new edge at the point on the beachline directly above the new site
-    Point start = new Point(site.x, getYAtX(above.focus, site.x));
-    //Create the new edge and its neighbor.
+    //Start a new edge at the point on the beachline directly above the new site. That point is
+    //where the bisector crosses x = site.x, found from the height between the two sites, which
+    //is exact. An arc whose site is barely above the new one is nearly a ray, so that point can
+    //be arbitrarily far up; any point of the bisector above the diagram will do instead, as for
+    //sites on one row.
+    double dx = site.x - above.focus.x;
+    double dy = site.y - above.focus.y;
+    double startY = (above.focus.y + site.y) / 2 - dx * dx / (2 * dy);
+    Point start = startY >= -(width + height)
+            ? new Point(site.x, Math.min(startY, site.y))
+            : new Point(bisectorX(above.focus, site, -(width + height)), -(width + height));
+    //Create the new edge and its twin running the other way.
     Edge left = new Edge(start, above.focus, site);
     Edge right = new Edge(start, site, above.focus);
-    left.setNeighbor(right);
     above.toEdge(left);
 
     /*Add the new arcs.
@@ -226,12 +534,40 @@ public class Voronoi {
     above.setRightChild(new Arc(right));
     above.rightChild.setLeftChild(p1);
     above.rightChild.setRightChild(p2);
+    above.setBounds(p0, p1);
+    above.rightChild.setBounds(p1, p2);
+    replaceOnBeach(above, p0, p2);
 
     //Check for circle events
     checkForCircle(p0);
     checkForCircle(p2);
   }
 
+  /**
+   * Handles a site event whose arc above belongs to a site on the same row. This only happens
+   * along the top row of sites, where the arc is still a vertical ray. The two arcs are placed
+   * side by side and the edge between them is a vertical line coming down from above the diagram.
+   *
+   * @param above the arc directly above the site
+   * @param site  the new site
+   */
+  private void handleSiteOnRow(Arc above, Point site) {
+    Point leftFocus = above.focus.x < site.x ? above.focus : site;
+    Point rightFocus = leftFocus == site ? above.focus : site;
+
+    Point start = new Point((leftFocus.x + rightFocus.x) / 2, -(width + height));
+    Arc left = new Arc(leftFocus);
+    Arc right = new Arc(rightFocus);
+    above.toEdge(new Edge(start, leftFocus, rightFocus));
+    above.setLeftChild(left);
+    above.setRightChild(right);
+    above.setBounds(left, right);
+    replaceOnBeach(above, left, right);
+
+    checkForCircle(left);
+    checkForCircle(right);
+  }
+
   /**
    * Handles a circle event. Circle events, if valid, cause the arc they were spawned from to
    * disappear.
@@ -250,21 +586,25 @@ public class Voronoi {
     //to happen
     if (leftArc.disappearance != null) {
       leftArc.disappearance.isValid = false;
+      if (metrics != null) metrics.invalidatedCircleEvents++;
       leftArc.disappearance = null;
     }
     if (rightArc.disappearance != null) {
       rightArc.disappearance.isValid = false;
+      if (metrics != null) metrics.invalidatedCircleEvents++;
       rightArc.disappearance = null;
     }
 
-    //Create a new vertex at the point on the beachline directly above the circle's center
-    Point vertex = new Point(event.site.x, getYAtX(midArc.focus, event.site.x));
+    //The vertex is at the circle's center
+    Point vertex = event.center;
 
     //End the parent's edges at this vertex and add the edges
-    leftParent.edge.end = vertex;
-    rightParent.edge.end = vertex;
-    edges.add(leftParent.edge);
-    edges.add(rightParent.edge);
+    if (!isPoint(leftParent, leftArc, midArc, rightArc)) {
+      edges.add(leftParent.edge.endingAt(vertex));
+    }
+    if (!isPoint(rightParent, leftArc, midArc, rightArc)) {
+      edges.add(rightParent.edge.endingAt(vertex));
+    }
 
     //Start a new edge at this vertex and connect it to the higher parent's edge
     //The edge goes between the left and right arcs
@@ -283,6 +623,8 @@ public class Voronoi {
       }
     }
     higher.edge = new Edge(vertex, leftArc.focus, rightArc.focus);
+    higher.vanished = midArc.focus;
+    higher.setBounds(leftArc, rightArc);
 
     //Delete the disappearing arc and its parent.
     Arc gParent = midArc.parent.parent;
@@ -303,6 +645,36 @@ public class Voronoi {
 
   //******************************HELPERS FOR EVENT HANDLING*************************************//
 
+  /**
+   * Points the edges on either side of an arc that left the beachline at the arcs replacing it
+   * @param old the arc that was replaced
+   * @param first the leftmost arc replacing it
+   * @param last the rightmost arc replacing it
+   */
+  private void replaceOnBeach(Arc old, Arc first, Arc last) {
+    Arc leftParent = old.getLeftParent();
+    Arc rightParent = old.getRightParent();
+    if (leftParent != null) leftParent.setRightArc(first);
+    if (rightParent != null) rightParent.setLeftArc(last);
+  }
+
+
+  /**
+   * Checks whether an edge ending at a circle event has no length. Four or more cocircular sites,
+   * as on a grid, give several circle events at one vertex, and the edge started by the first of
+   * them ends at the next. Its two sites only touch at the vertex, so the edge is left out rather
+   * than making them neighbors. This is exactly when the site that vanished where the edge started
+   * lies on the circle of this event.
+   * @param parent the edge being ended
+   * @param leftArc the left arc of the event
+   * @param midArc the arc that disappears
+   * @param rightArc the right arc of the event
+   * @return whether the edge starts and ends at the same vertex
+   */
+  private boolean isPoint(Arc parent, Arc leftArc, Arc midArc, Arc rightArc) {
+    if (parent.vanished == null) return false;
+    return Predicates.inCircle(leftArc.focus, midArc.focus, rightArc.focus, parent.vanished) == 0;
+  }
 
   /**
    * Checks for a circle event. If there is a valid circle event for this arc, adds it to the event
@@ -328,26 +700,36 @@ public class Voronoi {
     //don't create a circle event if the circle is invalid (not a positive area)
     if (circleArea(leftArc.focus, midArc.focus, rightArc.focus) != 1) return;
 
-    //find the intersection of the left parent's edge with the right parent's, which will
-    //be the center of the circle and where the edges will end
-    Point center = leftParent.edge.intersectionWith(rightParent.edge);
+    //The center of the circle through the three sites is where the parents' edges meet and
+    //where they will end. It is found from the sites, so vertical edges need no special case.
+    Point center = Predicates.circumcenter(leftArc.focus, midArc.focus, rightArc.focus);
     if (center == null) return;
 
-    double dx = midArc.focus.x - center.x;
-    double dy = midArc.focus.y - center.y;
+    //Find the bottom of the circle relative to the middle site. For nearly collinear sites the
+    //center is far above and the radius nearly cancels its height, so take the bottom as
+    //dx^2 / (d - dy) there, which is the same value without the cancellation.
+    double dx = center.x - midArc.focus.x;
+    double dy = center.y - midArc.focus.y;
     double d = Math.sqrt((dx * dx) + (dy * dy)); //The radius of the circle.
-    //The top of the circle must have passed. (must be below sweepline)
-    if (center.y + d < sweepline) {
-      return;
+    double bottomY = midArc.focus.y + (dy >= 0 ? dy + d : dx * dx / (d - dy));
+    //Converging breakpoints, which the exact orientation test above guarantees, always meet on
+    //or below the sweepline, so a bottom above it is rounding. Cocircular sites put the bottom
+    //exactly on the sweepline, and each triple rounds its circle differently there.
+    if (bottomY < sweepline) {
+      bottomY = sweepline;
     }
 
     //Find the bottom of the circle
-    Point bottom = new Point(center.x, (center.y + d));
+    Point bottom = new Point(center.x, bottomY);
 
     //Add the bottom of the circle as a circle event
     //When this point has been reached, the intersection of the left and right parabolas will
     //be at the center of the circle and the edges can be finished
-    events.add(new Event(bottom, midArc));
+    events.add(new Event(bottom, center, midArc));
+    if (metrics != null) {
+      metrics.circleEvents++;
+      metrics.queueSize(events.size());
+    }
   }
 
 
@@ -360,29 +742,8 @@ public class Voronoi {
    * @return whether the are is positive (1), negative (-1) or 0 (0)
    */
   public int circleArea(Point a, Point b, Point c) {
-    double area = (b.x - a.x) * (c.y - a.y) - (b.y - a.y) * (c.x - a.x);
-    if (area < 0) return -1;
-    else if (area == 0) return 0;
-    return 1; //valid area
-  }
-
-  /**
-   * Finds the y-coordinate of the point on the parabola with the given focus at
-   * the given x-coordinate.
-   * Uses the following formula: (x-h)^2 = 4p(y-k) => y = ((x-h)^2 + k) / 4p
-   *    (h, k) is the vertex of the parabola
-   *     p is the distance between the vertex and the focus
-   *    (x, y) is a point on the parabola
-   * @param focus the focus of the parabola
-   * @param x     the x-coordinate of the point
-   * @return The y-coordinate corresponding to the focus and x-coordinate
-   */
-  private double getYAtX(Point focus, double x) {
-    double h = focus.x;
-    double k = (focus.y + sweepline) / 2;
-    double p = focus.y - k;
-
-    return ((x - h) * (x - h) + 4 * p * k) / 4 / p;
+    //The sign is exact, even for nearly collinear points
+    return Predicates.orient(a, b, c);
   }
 
   /**
@@ -392,6 +753,7 @@ public class Voronoi {
    */
   private Arc findArcAbove(double x) {
     Arc curr = this.beachline;
+    int depth = 0;
     //Continue going deeper into the tree based on x until we find an arc on the beachline
     while (!curr.onBeach) {
       if (getXofEdge(curr) > x) {
@@ -399,47 +761,69 @@ public class Voronoi {
       } else {
         curr = curr.rightChild;
       }
+      depth++;
     }
+    if (metrics != null) metrics.beachlineDepth(depth);
     return curr;
   }
 
   /**
-   * Finds the x-coordinate of the point where the arc's children intersect
+   * Finds the x-coordinate of the point where the arc's children intersect. The result is cached
+   * on the arc for the current sweepline, since several events on one row search the same edges.
    * @param arc the arc whose children will be used
    * @return the x-coordinate
    */
   private double getXofEdge(Arc arc) {
-    //Get the left and right children and their focuses
-    Arc left = arc.getLeftChild();
-    Arc right = arc.getRightChild();
-    Point lFocus = left.focus;
-    Point rFocus = right.focus;
-
-    //Use math to find intersection
-
-    //Fill out equation (x − focusX)^2 + focusY^2 − directix^2 = 2(focusX − directix)y for
-    // left and right
-    double lDif = 2 * (lFocus.y - sweepline);
-    double la = 1 / lDif;
-    double lb = -2 * lFocus.x / lDif;
-    double lc = (Math.pow(lFocus.x, 2) + Math.pow(lFocus.y, 2) - Math.pow(sweepline, 2)) / lDif;
-
-    double rDif = 2 * (rFocus.y - sweepline);
-    double ra = 1 / rDif;
-    double rb = -2 * rFocus.x / rDif;
-    double rc = (Math.pow(rFocus.x, 2) + Math.pow(rFocus.y, 2) - Math.pow(sweepline, 2)) / rDif;
-
-    //Use quadratic formula (-b +/- sqr(b^2 - 4ac)) / 2a
-    double a = la - ra;
-    double b = lb - rb;
-    double c = lc - rc;
-
-    double discriminant = b * b - 4 * a * c;
-    double x1 = (-b + Math.sqrt(discriminant)) / (2 * a);
-    double x2 = (-b - Math.sqrt(discriminant)) / (2 * a);
-
-    if (lFocus.y > rFocus.y)  return Math.max(x1, x2);
-    return Math.min(x1, x2);
+    if (arc.breakpointSweep == sweepline) return arc.breakpoint;
+    double x = breakpoint(arc);
+    arc.breakpoint = x;
+    arc.breakpointSweep = sweepline;
+    return x;
+  }
+
+  /**
+   * Finds the x-coordinate of the bisector of two sites at the given y
+   * @param a one site
+   * @param b another site, not on the same column as a
+   * @param y the y-coordinate
+   * @return the x-coordinate
+   */
+  private static double bisectorX(Point a, Point b, double y) {
+    return (a.x + b.x) / 2 + (b.y - a.y) * ((a.y - y) + (b.y - y)) / (2 * (b.x - a.x));
+  }
+
+  /**
+   * Finds the x-coordinate where the two neighboring arcs on either side of an edge intersect
+   * @param edge the edge between the arcs
+   * @return the x-coordinate
+   */
+  private double breakpoint(Arc edge) {
+    Point lFocus = edge.leftArc.focus;
+    Point rFocus = edge.rightArc.focus;
+
+    //A site on the sweepline has a vertical ray for a parabola, which meets the other arc at
+    //the site's own x
+    if (lFocus.y == sweepline && rFocus.y == sweepline) return (lFocus.x + rFocus.x) / 2;
+    if (lFocus.y == sweepline) return lFocus.x;
+    if (rFocus.y == sweepline) return rFocus.x;
+    //Parabolas of sites on the same row meet on the vertical bisector
+    if (lFocus.y == rFocus.y) return (lFocus.x + rFocus.x) / 2;
+
+    //Work relative to the left focus, with each focus's distance above the sweepline. With
+    //u = x - lFocus.x the parabolas meet where e u^2 + 2 dl dx u - dl (dx^2 + dr e) = 0, whose
+    //discriminant is 4 dl dr (dx^2 + e^2). The breakpoint with the left arc on its left is the
+    //root where e u + dl dx = s. Pick the form of it that cannot cancel, so a focus just above
+    //the sweepline, whose parabola is nearly a ray, still gives an accurate breakpoint. Only the
+    //distances to the sweepline change as it moves; the rest is stored on the edge.
+    double dl = sweepline - lFocus.y;
+    double dr = sweepline - rFocus.y;
+    double dx = edge.gapX;
+    double e = -edge.gapY;
+    double s = Math.sqrt(dl * dr * edge.gapSq);
+    double u = dl * dx >= 0
+            ? dl * (dx * dx + dr * e) / (dl * dx + s)
+            : (s - dl * dx) / e;
+    return lFocus.x + u;
   }
 
 }
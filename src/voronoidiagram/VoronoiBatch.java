@@ -0,0 +1,207 @@
+package voronoidiagram;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds many small, independent diagrams at once. The site sets are given as one packed array of
+ * coordinates and the edges come back the same way, so no per-diagram objects are handed across
+ * the API. The work is split across a fork/join pool, whose idle workers steal from busy ones, and
+ * each worker thread keeps one scratch generator whose event queue and edge list are reused for
+ * every diagram it builds. Each diagram's edges are written from the scratch generator straight
+ * into the output buffer, so no output is allocated per diagram; the sweep itself still makes its
+ * points, arcs, events and edges as objects.
+ */
+public class VoronoiBatch {
+  //The number of sites below which a range of site sets is built on one thread
+  private static final int SITES_PER_TASK = 4096;
+  //A diagram of n sites has fewer than 4n edges before clipping: two per site event and one per
+  //vertex, of which there are fewer than 2n. Each set gets that much room in the output.
+  private static final int EDGES_PER_SITE = 4;
+
+  private final ForkJoinPool pool;
+  //Each worker's scratch generator, replaced when the diagram dimensions change
+  private final ThreadLocal<Voronoi> scratch = new ThreadLocal<>();
+
+  /**
+   * Creates a batch builder on the common fork/join pool
+   */
+  public VoronoiBatch() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a batch builder on the given pool
+   * @param pool the pool the diagrams are built on
+   */
+  public VoronoiBatch(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Represents the edges of every diagram in a batch. The edges of diagram i are stored as
+   * x1, y1, x2, y2 groups in edges, from group offsets[i] up to (not including) group
+   * offsets[i + 1]. The array may run on past the last group in use.
+   */
+  public static final class Result {
+    public final double[] edges;
+    public final int[] offsets;
+
+    Result(double[] edges, int[] offsets) {
+      this.edges = edges;
+      this.offsets = offsets;
+    }
+
+    /**
+     * The number of diagrams in the batch
+     */
+    public int size() {
+      return offsets.length - 1;
+    }
+
+    /**
+     * The number of edges in one diagram
+     * @param diagram the index of the diagram
+     */
+    public int edgeCount(int diagram) {
+      return offsets[diagram + 1] - offsets[diagram];
+    }
+  }
+
+  /**
+   * Builds a diagram for every site set. Site set i is made of the sites from offsets[i] up to
+   * (not including) offsets[i + 1], where site j is at coords[2j], coords[2j + 1].
+   *
+   * @param width   the width of every diagram
+   * @param height  the height of every diagram
+   * @param coords  the packed site coordinates
+   * @param offsets the first site of each set, followed by the total number of sites
+   * @return the packed edges of every diagram
+   * @throws IllegalArgumentException if the offsets do not describe the coordinates or a site is
+   *                                  out of bounds
+   */
+  public Result build(int width, int height, double[] coords, int[] offsets) {
+    validate(width, height, coords, offsets);
+    BuildEvent event = new BuildEvent();
+    event.begin();
+
+    int sets = offsets.length - 1;
+    double[] edges = new double[4 * EDGES_PER_SITE * (offsets[sets] - offsets[0])];
+    int[] counts = new int[sets];
+    pool.invoke(new BuildTask(width, height, coords, offsets, edges, counts, 0, sets));
+
+    //Close the gaps left at the end of each set's room, moving its edges down in place
+    int[] edgeOffsets = new int[sets + 1];
+    for (int i = 0; i < sets; i++) {
+      edgeOffsets[i + 1] = edgeOffsets[i] + counts[i];
+      int room = slot(offsets, i);
+      if (room != 4 * edgeOffsets[i]) {
+        System.arraycopy(edges, room, edges, 4 * edgeOffsets[i], 4 * counts[i]);
+      }
+    }
+
+    event.end();
+    if (event.shouldCommit()) {
+      event.mode = "batch";
+      event.siteCount = offsets[sets] - offsets[0];
+      event.edgeCount = edgeOffsets[sets];
+      event.commit();
+    }
+    return new Result(edges, edgeOffsets);
+  }
+
+  private static void validate(int width, int height, double[] coords, int[] offsets) {
+    if (offsets.length < 1) {
+      throw new IllegalArgumentException("Offsets must end with the total number of sites!");
+    }
+    if (offsets[offsets.length - 1] * 2 > coords.length || offsets[0] < 0) {
+      throw new IllegalArgumentException("Offsets reach past the coordinates!");
+    }
+    if (4L * EDGES_PER_SITE * (offsets[offsets.length - 1] - offsets[0]) > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Too many sites for one batch!");
+    }
+    for (int i = 1; i < offsets.length; i++) {
+      if (offsets[i] < offsets[i - 1]) {
+        throw new IllegalArgumentException("Offsets must not decrease!");
+      }
+    }
+    for (int i = 2 * offsets[0]; i < 2 * offsets[offsets.length - 1]; i += 2) {
+      if (!Util.inRangeEx(0, coords[i], width) || !Util.inRangeEx(0, coords[i + 1], height)) {
+        throw new IllegalArgumentException("Site out of bounds: " + coords[i] + ", "
+                + coords[i + 1]);
+      }
+    }
+  }
+
+  /**
+   * Finds where the room for a set's edges begins in the output
+   */
+  private static int slot(int[] offsets, int set) {
+    return 4 * EDGES_PER_SITE * (offsets[set] - offsets[0]);
+  }
+
+  /**
+   * Finds this thread's scratch generator for the given dimensions
+   */
+  private Voronoi scratch(int width, int height) {
+    Voronoi v = scratch.get();
+    if (v == null || v.width != width || v.height != height) {
+      v = new Voronoi(width, height);
+      scratch.set(v);
+    }
+    return v;
+  }
+
+  /**
+   * Builds a range of site sets, splitting it in half while it holds many sites
+   */
+  private class BuildTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int width;
+    private final int height;
+    private final double[] coords;
+    private final int[] offsets;
+    //The output, with room for each set from slot(offsets, i), and the edge count of each set
+    private final double[] out;
+    private final int[] counts;
+    private final int from;
+    private final int to;
+
+    BuildTask(int width, int height, double[] coords, int[] offsets, double[] out, int[] counts,
+              int from, int to) {
+      this.width = width;
+      this.height = height;
+      this.coords = coords;
+      this.offsets = offsets;
+      this.out = out;
+      this.counts = counts;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1 && offsets[to] - offsets[from] > SITES_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new BuildTask(width, height, coords, offsets, out, counts, from, mid),
+                new BuildTask(width, height, coords, offsets, out, counts, mid, to));
+        return;
+      }
+      Voronoi v = scratch(width, height);
+      for (int i = from; i < to; i++) {
+        v.loadSites(coords, offsets[i], offsets[i + 1]);
+        ArrayList<Edge> edges = v.sweep();
+        int k = slot(offsets, i);
+        for (Edge e : edges) {
+          out[k++] = e.start.x;
+          out[k++] = e.start.y;
+          out[k++] = e.end.x;
+          out[k++] = e.end.y;
+        }
+        counts[i] = edges.size();
+      }
+    }
+  }
+}